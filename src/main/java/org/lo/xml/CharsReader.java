@@ -0,0 +1,84 @@
+package org.lo.xml;
+
+import java.io.Reader;
+
+/**
+ * Reader of a CharSequence that reads chars directly from the sequence instead
+ * of copying it into a String first. The sequence must not change while being
+ * read.
+ *
+ * @author phuc
+ */
+public class CharsReader extends Reader {
+
+    private final CharSequence cs;
+
+    private int pos;
+
+    private int mark;
+
+    public CharsReader(CharSequence cs) {
+        this.cs = F.checkNotNull(cs);
+    }
+
+    @Override
+    public int read() {
+        return pos < cs.length() ? cs.charAt(pos++) : -1;
+    }
+
+    @Override
+    public int read(char[] buf, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int end = Math.min(cs.length(), pos + len);
+        if (pos >= end) {
+            return -1;
+        }
+        if (cs instanceof String) {
+            ((String) cs).getChars(pos, end, buf, off);
+        } else if (cs instanceof StringBuilder) {
+            ((StringBuilder) cs).getChars(pos, end, buf, off);
+        } else if (cs instanceof StringBuffer) {
+            ((StringBuffer) cs).getChars(pos, end, buf, off);
+        } else {
+            for (int i = pos; i < end; i++) {
+                buf[off + i - pos] = cs.charAt(i);
+            }
+        }
+        int n = end - pos;
+        pos = end;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(cs.length() - pos, n));
+        pos += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) {
+        mark = pos;
+    }
+
+    @Override
+    public void reset() {
+        pos = mark;
+    }
+
+    @Override
+    public void close() {}
+
+}
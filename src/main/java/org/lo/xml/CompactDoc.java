@@ -0,0 +1,639 @@
+package org.lo.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Read-only document stored in arrays, for large inputs that would take too
+ * much heap as DOM. Nodes are numbered in document order, the document
+ * being node 0, and each node takes a few ints in parallel arrays. Names are
+ * interned in a table, and all character data, text and attribute values,
+ * are kept in shared chunks of chars, so character data is not limited by
+ * the max length of an array. The number of nodes, and of attributes, is
+ * limited to about 2G each since they are numbered by int.
+ * <p>
+ * The document is read by a transformer through {@link #source()}, which
+ * replays it as SAX events, and navigated by node numbers with
+ * {@link #select(String)} for simple paths.
+ *
+ * @author phuc
+ */
+public class CompactDoc {
+
+    public static final byte DOCUMENT = 0, ELEMENT = 1, TEXT = 2,
+        COMMENT = 3, PI = 4;
+
+    private static final String LEXICAL_HANDLER =
+        "http://xml.org/sax/properties/lexical-handler";
+
+    /** Max length of the arrays, as some JVMs reserve header words */
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    /** Character data is kept in chunks of 2^CHUNK_BITS chars */
+    private static final int CHUNK_BITS = 16, CHUNK = 1 << CHUNK_BITS;
+
+    /** Names as {namespace uri, local name, qualified name} */
+    private final List<String[]> names = new ArrayList<>();
+
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+
+    private int size;
+
+    private byte[] kind = new byte[64];
+
+    /** Name of elements and targets of processing instructions */
+    private int[] name = new int[64];
+
+    private int[] parent = new int[64];
+
+    /** Number of the node following the subtree of each node */
+    private int[] end = new int[64];
+
+    /** Start of the chars of text, or first attribute of element */
+    private long[] start = new long[64];
+
+    /** Number of the chars of text, or the attributes of element */
+    private int[] length = new int[64];
+
+    /** Start and count of the namespace declarations of elements */
+    private int[] nsStart = new int[64], nsCount = new int[64];
+
+    private int attrs;
+
+    private int[] attrName = new int[16], attrLength = new int[16];
+
+    private long[] attrStart = new long[16];
+
+    private int nss;
+
+    /** Declarations as names {uri, prefix, prefix} */
+    private int[] nsName = new int[4];
+
+    /** Number of chars of the data */
+    private long chars;
+
+    private char[][] data = new char[16][];
+
+    private CompactDoc() {
+        add(DOCUMENT, -1, -1);
+    }
+
+    /** Read a source, as a stream of SAX events when the source allows */
+    public static CompactDoc of(Source src) {
+        CompactDoc doc = new CompactDoc();
+        Loader loader = doc.new Loader();
+        SAXResult result = new SAXResult(loader);
+        result.setLexicalHandler(loader);
+        try {
+            TransformerFactory.newInstance().newTransformer()
+                .transform(src, result);
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException(e);
+        }
+        doc.trim();
+        return doc;
+    }
+
+    public static CompactDoc parse(String xml) {
+        return of(new StreamSource(new StringReader(xml)));
+    }
+
+    /** Read a file through memory-mapped windows */
+    public static CompactDoc parse(Path file) {
+        try (InputStream in = new MappedInputStream(file)) {
+            return of(new StreamSource(in, file.toUri().toString()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Source replaying the document as SAX events */
+    public Source source() {
+        return new SAXSource(new Replay(), new InputSource());
+    }
+
+    /** Number of nodes, including the document node */
+    public int size() {
+        return size;
+    }
+
+    public byte kind(int node) {
+        return kind[node];
+    }
+
+    /** Qualified name of an element, target of a processing instruction */
+    public String name(int node) {
+        return name[node] < 0 ? null : names.get(name[node])[2];
+    }
+
+    public String localName(int node) {
+        return name[node] < 0 ? null : names.get(name[node])[1];
+    }
+
+    public String namespaceUri(int node) {
+        return name[node] < 0 ? null : names.get(name[node])[0];
+    }
+
+    /** Parent of a node, -1 for the document */
+    public int parent(int node) {
+        return parent[node];
+    }
+
+    /** First child of a node, -1 if none */
+    public int firstChild(int node) {
+        int c = node + 1;
+        return c < size && parent[c] == node ? c : -1;
+    }
+
+    /** Next sibling of a node, -1 if none */
+    public int nextSibling(int node) {
+        int s = end[node];
+        return s < size && parent[s] == parent[node] ? s : -1;
+    }
+
+    /** Text of text, comment and processing instruction nodes */
+    public String text(int node) {
+        return kind[node] == ELEMENT || kind[node] == DOCUMENT ? null
+            : string(start[node], length[node]);
+    }
+
+    /** Concatenated text of a node and its descendants, as in xpath */
+    public String string(int node) {
+        if (kind[node] != ELEMENT && kind[node] != DOCUMENT) {
+            return text(node);
+        }
+        StringBuilder s = new StringBuilder();
+        for (int i = node + 1; i < end[node]; i++) {
+            if (kind[i] == TEXT) {
+                appendTo(s, start[i], length[i]);
+            }
+        }
+        return s.toString();
+    }
+
+    /** Value of an attribute of an element given its qualified name */
+    public String attribute(int node, String qname) {
+        if (kind[node] != ELEMENT) {
+            return null;
+        }
+        int first = (int) start[node];
+        for (int a = first; a < first + length[node]; a++) {
+            if (names.get(attrName[a])[2].equals(qname)) {
+                return string(attrStart[a], attrLength[a]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Elements at a path of qualified names or '*' separated by '/' for
+     * children and '//' for descendants; the path starts from the document.
+     */
+    public int[] select(String path) {
+        int[] nodes = { 0 };
+        int i = 0;
+        while (i < path.length()) {
+            boolean descendants = path.startsWith("//", i);
+            i += descendants ? 2 : path.startsWith("/", i) ? 1 : 0;
+            int j = path.indexOf('/', i);
+            String step = path.substring(i, j < 0 ? path.length() : j);
+            if (step.isEmpty()) {
+                throw new IllegalArgumentException("Invalid path " + path);
+            }
+            nodes = step(nodes, step, descendants);
+            i = j < 0 ? path.length() : j;
+        }
+        return nodes;
+    }
+
+    private int[] step(int[] context, String step, boolean descendants) {
+        int[] found = new int[16];
+        int n = 0, last = -1;
+        for (int c : context) {
+            int from = c + 1;
+            if (from <= last) {
+                from = last + 1;
+            }
+            for (int i = from; i < end[c]; i = descendants ? i + 1 : end[i]) {
+                if (kind[i] == ELEMENT && (step.equals("*")
+                    || names.get(name[i])[2].equals(step))) {
+                    if (n == found.length) {
+                        found = Arrays.copyOf(found, grow(n));
+                    }
+                    found[n++] = i;
+                }
+            }
+            if (descendants) {
+                last = Math.max(last, end[c] - 1);
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    private int add(byte k, int nm, int p) {
+        if (size == kind.length) {
+            int n = grow(size);
+            kind = Arrays.copyOf(kind, n);
+            name = Arrays.copyOf(name, n);
+            parent = Arrays.copyOf(parent, n);
+            end = Arrays.copyOf(end, n);
+            start = Arrays.copyOf(start, n);
+            length = Arrays.copyOf(length, n);
+            nsStart = Arrays.copyOf(nsStart, n);
+            nsCount = Arrays.copyOf(nsCount, n);
+        }
+        kind[size] = k;
+        name[size] = nm;
+        parent[size] = p;
+        end[size] = size + 1;
+        return size++;
+    }
+
+    private int name(String uri, String local, String qname) {
+        String u = uri == null ? "" : uri;
+        String key = u + '\u0000' + qname;
+        Integer i = nameIndex.get(key);
+        if (i == null) {
+            i = names.size();
+            names.add(new String[] { u, local, qname });
+            nameIndex.put(key, i);
+        }
+        return i;
+    }
+
+    /**
+     * Capacity to grow arrays of the given length to, doubling up to the max
+     * length of arrays.
+     */
+    private static int grow(int length) {
+        if (length >= MAX_ARRAY) {
+            throw new IllegalArgumentException("Document has more than "
+                + MAX_ARRAY + " nodes or attributes");
+        }
+        return (int) Math.min(length * 2L, MAX_ARRAY);
+    }
+
+    /** Chunk of the data receiving the next char, allocated if needed */
+    private char[] chunk() {
+        int c = (int) (chars >>> CHUNK_BITS);
+        if (c == data.length) {
+            data = Arrays.copyOf(data, grow(c));
+        }
+        if (data[c] == null) {
+            data[c] = new char[CHUNK];
+        }
+        return data[c];
+    }
+
+    /** Append chars to the shared data, return their start */
+    private long append(char[] ch, int off, int len) {
+        long at = chars;
+        for (int i = 0; i < len;) {
+            char[] chunk = chunk();
+            int o = (int) (chars & (CHUNK - 1));
+            int n = Math.min(len - i, CHUNK - o);
+            System.arraycopy(ch, off + i, chunk, o, n);
+            i += n;
+            chars += n;
+        }
+        return at;
+    }
+
+    private long append(String s) {
+        long at = chars;
+        for (int i = 0; i < s.length();) {
+            char[] chunk = chunk();
+            int o = (int) (chars & (CHUNK - 1));
+            int n = Math.min(s.length() - i, CHUNK - o);
+            s.getChars(i, i + n, chunk, o);
+            i += n;
+            chars += n;
+        }
+        return at;
+    }
+
+    /** Append chars of the data to a builder */
+    private StringBuilder appendTo(StringBuilder s, long at, int len) {
+        for (long p = at; p < at + len;) {
+            int o = (int) (p & (CHUNK - 1));
+            int n = (int) Math.min(at + len - p, CHUNK - o);
+            s.append(data[(int) (p >>> CHUNK_BITS)], o, n);
+            p += n;
+        }
+        return s;
+    }
+
+    private String string(long at, int len) {
+        return appendTo(new StringBuilder(len), at, len).toString();
+    }
+
+    /** Release the unused capacity of the arrays */
+    private void trim() {
+        kind = Arrays.copyOf(kind, size);
+        name = Arrays.copyOf(name, size);
+        parent = Arrays.copyOf(parent, size);
+        end = Arrays.copyOf(end, size);
+        start = Arrays.copyOf(start, size);
+        length = Arrays.copyOf(length, size);
+        nsStart = Arrays.copyOf(nsStart, size);
+        nsCount = Arrays.copyOf(nsCount, size);
+        attrName = Arrays.copyOf(attrName, attrs);
+        attrStart = Arrays.copyOf(attrStart, attrs);
+        attrLength = Arrays.copyOf(attrLength, attrs);
+        nsName = Arrays.copyOf(nsName, nss);
+        int used = (int) ((chars + CHUNK - 1) >>> CHUNK_BITS);
+        data = Arrays.copyOf(data, used);
+        int last = (int) (chars & (CHUNK - 1));
+        if (last > 0) {
+            data[used - 1] = Arrays.copyOf(data[used - 1], last);
+        }
+    }
+
+    /** Build the arrays from SAX events */
+    private class Loader extends DefaultHandler2 {
+        int current = 0;
+
+        /** Namespace declarations of the next element */
+        int pendingNs = 0;
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            if (nss == nsName.length) {
+                nsName = Arrays.copyOf(nsName, grow(nss));
+            }
+            nsName[nss++] = name(uri, prefix, prefix);
+            pendingNs += 1;
+        }
+
+        @Override
+        public void startElement(String uri, String local, String qname,
+            Attributes atts) {
+            int e = add(ELEMENT, name(uri, local, qname), current);
+            nsStart[e] = nss - pendingNs;
+            nsCount[e] = pendingNs;
+            pendingNs = 0;
+            start[e] = attrs;
+            length[e] = atts.getLength();
+            for (int i = 0; i < atts.getLength(); i++) {
+                if (attrs == attrName.length) {
+                    int n = grow(attrs);
+                    attrName = Arrays.copyOf(attrName, n);
+                    attrStart = Arrays.copyOf(attrStart, n);
+                    attrLength = Arrays.copyOf(attrLength, n);
+                }
+                attrName[attrs] = name(atts.getURI(i), atts.getLocalName(i),
+                    atts.getQName(i));
+                String v = atts.getValue(i);
+                attrStart[attrs] = append(v);
+                attrLength[attrs] = v.length();
+                attrs += 1;
+            }
+            current = e;
+        }
+
+        @Override
+        public void endElement(String uri, String local, String qname) {
+            end[current] = size;
+            current = parent[current];
+        }
+
+        @Override
+        public void characters(char[] ch, int off, int len) {
+            int last = size - 1;
+            if (kind[last] == TEXT && parent[last] == current
+                && start[last] + length[last] == chars
+                && length[last] <= Integer.MAX_VALUE - len) {
+                append(ch, off, len);
+                length[last] += len;
+                return;
+            }
+            int t = add(TEXT, -1, current);
+            start[t] = append(ch, off, len);
+            length[t] = len;
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int off, int len) {
+            characters(ch, off, len);
+        }
+
+        @Override
+        public void comment(char[] ch, int off, int len) {
+            int c = add(COMMENT, -1, current);
+            start[c] = append(ch, off, len);
+            length[c] = len;
+        }
+
+        @Override
+        public void processingInstruction(String target, String text) {
+            int p = add(PI, name("", target, target), current);
+            start[p] = append(text);
+            length[p] = text.length();
+        }
+
+        @Override
+        public void endDocument() {
+            end[0] = size;
+        }
+    }
+
+    /** Reader replaying the document as SAX events */
+    private class Replay implements XMLReader {
+        ContentHandler content;
+        LexicalHandler lexical;
+        DTDHandler dtd;
+        EntityResolver entities;
+        ErrorHandler errors;
+
+        @Override
+        public boolean getFeature(String feature)
+            throws SAXNotRecognizedException {
+            if (feature.equals("http://xml.org/sax/features/namespaces")) {
+                return true;
+            } else if (feature.equals(
+                "http://xml.org/sax/features/namespace-prefixes")) {
+                return false;
+            }
+            throw new SAXNotRecognizedException(feature);
+        }
+
+        @Override
+        public void setFeature(String feature, boolean value)
+            throws SAXNotRecognizedException {
+            if (getFeature(feature) != value) {
+                throw new SAXNotRecognizedException(feature);
+            }
+        }
+
+        @Override
+        public Object getProperty(String property)
+            throws SAXNotRecognizedException {
+            if (property.equals(LEXICAL_HANDLER)) {
+                return lexical;
+            }
+            throw new SAXNotRecognizedException(property);
+        }
+
+        @Override
+        public void setProperty(String property, Object value)
+            throws SAXNotRecognizedException {
+            if (property.equals(LEXICAL_HANDLER)) {
+                lexical = (LexicalHandler) value;
+            } else {
+                throw new SAXNotRecognizedException(property);
+            }
+        }
+
+        @Override
+        public void setEntityResolver(EntityResolver resolver) {
+            this.entities = resolver;
+        }
+
+        @Override
+        public EntityResolver getEntityResolver() {
+            return entities;
+        }
+
+        @Override
+        public void setDTDHandler(DTDHandler handler) {
+            this.dtd = handler;
+        }
+
+        @Override
+        public DTDHandler getDTDHandler() {
+            return dtd;
+        }
+
+        @Override
+        public void setContentHandler(ContentHandler handler) {
+            this.content = handler;
+        }
+
+        @Override
+        public ContentHandler getContentHandler() {
+            return content;
+        }
+
+        @Override
+        public void setErrorHandler(ErrorHandler handler) {
+            this.errors = handler;
+        }
+
+        @Override
+        public ErrorHandler getErrorHandler() {
+            return errors;
+        }
+
+        @Override
+        public void parse(String systemId) throws SAXException {
+            parse(new InputSource(systemId));
+        }
+
+        @Override
+        public void parse(InputSource input) throws SAXException {
+            ContentHandler h = content;
+            AttributesImpl atts = new AttributesImpl();
+            int[] open = new int[16];
+            int depth = 0;
+            h.startDocument();
+            for (int i = 1; i < size; i++) {
+                while (depth > 0 && open[depth - 1] != parent[i]) {
+                    endElement(h, open[--depth]);
+                }
+                switch (kind[i]) {
+                case ELEMENT:
+                    startElement(h, i, atts);
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = i;
+                    break;
+                case TEXT:
+                    characters(h, start[i], length[i]);
+                    break;
+                case COMMENT:
+                    if (lexical != null) {
+                        char[] c = text(i).toCharArray();
+                        lexical.comment(c, 0, c.length);
+                    }
+                    break;
+                case PI:
+                    h.processingInstruction(name(i), text(i));
+                    break;
+                default:
+                    break;
+                }
+            }
+            while (depth > 0) {
+                endElement(h, open[--depth]);
+            }
+            h.endDocument();
+        }
+
+        private void startElement(ContentHandler h, int e,
+            AttributesImpl atts) throws SAXException {
+            for (int n = nsStart[e]; n < nsStart[e] + nsCount[e]; n++) {
+                String[] ns = names.get(nsName[n]);
+                h.startPrefixMapping(ns[1], ns[0]);
+            }
+            atts.clear();
+            int first = (int) start[e];
+            for (int a = first; a < first + length[e]; a++) {
+                String[] an = names.get(attrName[a]);
+                atts.addAttribute(an[0], an[1], an[2], "CDATA",
+                    string(attrStart[a], attrLength[a]));
+            }
+            String[] en = names.get(name[e]);
+            h.startElement(en[0], en[1], en[2], atts);
+        }
+
+        /** Send chars of the data, one piece per chunk */
+        private void characters(ContentHandler h, long at, int len)
+            throws SAXException {
+            for (long p = at; p < at + len;) {
+                int o = (int) (p & (CHUNK - 1));
+                int n = (int) Math.min(at + len - p, CHUNK - o);
+                h.characters(data[(int) (p >>> CHUNK_BITS)], o, n);
+                p += n;
+            }
+        }
+
+        private void endElement(ContentHandler h, int e)
+            throws SAXException {
+            String[] en = names.get(name[e]);
+            h.endElement(en[0], en[1], en[2]);
+            for (int n = nsStart[e]; n < nsStart[e] + nsCount[e]; n++) {
+                h.endPrefixMapping(names.get(nsName[n])[1]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package org.lo.xml;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * URIResolver caching parsed documents, such as lookup tables read by
+ * document() on every transformation. Documents are parsed once then served
+ * as DOMSource; they are shared by all transformations and must not be
+ * changed. The least recently used documents are dropped beyond the max
+ * size. Documents of file URIs are parsed again when their files are
+ * modified.
+ *
+ * @author phuc
+ */
+public class DocCache implements URIResolver {
+
+    /** A parsed document and the modified time of its file, if any */
+    private static class Cached {
+        final Document doc;
+        final Path file;
+        final long modified;
+
+        Cached(Document doc, Path file, long modified) {
+            this.doc = doc;
+            this.file = file;
+            this.modified = modified;
+        }
+    }
+
+    /** Parser of shared documents, building all nodes up front */
+    private static final XmlParser PARSER = new XmlParser().secure(false)
+        .deferred(false);
+
+    private final int maxSize;
+
+    /** Resolver of sources to parse; null to parse the URIs directly */
+    private final URIResolver loader;
+
+    private final Map<String, Cached> docs;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong reloads = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /** Cache of documents from the sources given by a loader */
+    public DocCache(int maxSize, URIResolver loader) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        this.maxSize = maxSize;
+        this.loader = loader;
+        this.docs = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> e) {
+                boolean full = size() > DocCache.this.maxSize;
+                if (full) {
+                    evictions.incrementAndGet();
+                }
+                return full;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d hits=%d misses=%d reloads=%d"
+            + " evictions=%d", size(), hits(), misses(), reloads(),
+            evictions());
+    }
+
+    @Override
+    public Source resolve(String href, String base)
+        throws TransformerException {
+        String uri = uri(href, base);
+        Cached e;
+        synchronized (docs) {
+            e = docs.get(uri);
+        }
+        if (e != null && (e.file == null || e.modified == modified(e.file))) {
+            hits.incrementAndGet();
+        } else {
+            if (e == null) {
+                misses.incrementAndGet();
+            } else {
+                reloads.incrementAndGet();
+            }
+            e = load(uri, href, base);
+            synchronized (docs) {
+                docs.put(uri, e);
+            }
+        }
+        return new DOMSource(e.doc, uri);
+    }
+
+    public int size() {
+        synchronized (docs) {
+            return docs.size();
+        }
+    }
+
+    /** Drop a document, given its absolute URI */
+    public void invalidate(String uri) {
+        synchronized (docs) {
+            docs.remove(uri);
+        }
+    }
+
+    public void clear() {
+        synchronized (docs) {
+            docs.clear();
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Number of documents parsed again because their files changed */
+    public long reloads() {
+        return reloads.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Ratio of hits over all lookups, 0 if there is no lookup */
+    public double hitRate() {
+        long h = hits(), all = h + misses() + reloads();
+        return all == 0 ? 0 : (double) h / all;
+    }
+
+    private Cached load(String uri, String href, String base)
+        throws TransformerException {
+        Source src = loader == null ? null : loader.resolve(href, base);
+        Path file = null;
+        long modified = 0;
+        if (src == null && uri.startsWith("file:")) {
+            file = Paths.get(URI.create(uri));
+            modified = modified(file);
+        }
+        Document doc;
+        if (src == null) {
+            try {
+                doc = PARSER.parse(new InputSource(uri));
+            } catch (RuntimeException e) {
+                throw new TransformerException("Failed to parse " + uri, e);
+            }
+        } else {
+            DOMResult dom = new DOMResult(F.newDocument());
+            F.newTransformer(TransformerFactory.newInstance())
+                .transform(src, dom);
+            doc = (Document) dom.getNode();
+        }
+        return new Cached(doc, file, modified);
+    }
+
+    /** Absolute URI of an href, the href itself if it cannot be resolved */
+    private String uri(String href, String base) {
+        try {
+            URI uri = new URI(href);
+            if (uri.isAbsolute()) {
+                return uri.toString();
+            } else if (base != null && !base.isEmpty()) {
+                return new URI(base).resolve(uri).toString();
+            } else if (loader == null) {
+                return Paths.get(href).toAbsolutePath().toUri().toString();
+            } else {
+                return href;
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return href;
+        }
+    }
+
+    private static long modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+}
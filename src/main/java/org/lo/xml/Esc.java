@@ -0,0 +1,126 @@
+package org.lo.xml;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Escape text for xml and json. Replacements of ascii characters are looked up
+ * in tables; runs of characters that need no escaping are appended in bulk.
+ * Valid surrogate pairs are kept, lone surrogates are replaced.
+ *
+ * @author phuc
+ */
+public final class Esc {
+
+    /** Replacement for characters that cannot appear in xml */
+    private static final String BAD_XML = "\uFFFD";
+
+    /** Replacements of ascii characters in xml text */
+    private static final String[] XML_TEXT = new String[128];
+
+    /** Replacements of ascii characters in double-quoted xml attributes */
+    private static final String[] XML_ATTR = new String[128];
+
+    /** Replacements of ascii characters in json strings */
+    private static final String[] JSON = new String[128];
+
+    static {
+        for (char c = 0; c < 0x20; c++) {
+            XML_TEXT[c] = BAD_XML;
+            XML_ATTR[c] = BAD_XML;
+            JSON[c] = unicode(c);
+        }
+        XML_TEXT['\t'] = null;
+        XML_TEXT['\n'] = null;
+        XML_TEXT['\r'] = "&#13;";
+        XML_TEXT['&'] = "&amp;";
+        XML_TEXT['<'] = "&lt;";
+        XML_TEXT['>'] = "&gt;";
+
+        XML_ATTR['\t'] = "&#9;";
+        XML_ATTR['\n'] = "&#10;";
+        XML_ATTR['\r'] = "&#13;";
+        XML_ATTR['&'] = "&amp;";
+        XML_ATTR['<'] = "&lt;";
+        XML_ATTR['>'] = "&gt;";
+        XML_ATTR['"'] = "&quot;";
+
+        JSON['\b'] = "\\b";
+        JSON['\t'] = "\\t";
+        JSON['\n'] = "\\n";
+        JSON['\f'] = "\\f";
+        JSON['\r'] = "\\r";
+        JSON['"'] = "\\\"";
+        JSON['\\'] = "\\\\";
+    }
+
+    private Esc() {}
+
+    /** Escape xml text content */
+    public static String xml(CharSequence s) {
+        return xml(s, new StringBuilder(s.length() + 16)).toString();
+    }
+
+    /** Append escaped xml text content to the output */
+    public static <A extends Appendable> A xml(CharSequence s, A out) {
+        return escape(XML_TEXT, false, s, out);
+    }
+
+    /** Escape value of a double-quoted xml attribute */
+    public static String attr(CharSequence s) {
+        return attr(s, new StringBuilder(s.length() + 16)).toString();
+    }
+
+    /** Append escaped value of a double-quoted xml attribute to the output */
+    public static <A extends Appendable> A attr(CharSequence s, A out) {
+        return escape(XML_ATTR, false, s, out);
+    }
+
+    /** Escape content of a json string, without the surrounding quotes */
+    public static String json(CharSequence s) {
+        return json(s, new StringBuilder(s.length() + 16)).toString();
+    }
+
+    /** Append escaped content of a json string to the output */
+    public static <A extends Appendable> A json(CharSequence s, A out) {
+        return escape(JSON, true, s, out);
+    }
+
+    private static <A extends Appendable> A escape(String[] table,
+        boolean json, CharSequence s, A out) {
+        try {
+            int n = s.length();
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                String rep;
+                if (c < 128) {
+                    rep = table[c];
+                } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i += 1;
+                    continue;
+                } else if (Character.isSurrogate(c)) {
+                    rep = json ? unicode(c) : BAD_XML;
+                } else if (json) {
+                    rep = c == '\u2028' || c == '\u2029' ? unicode(c) : null;
+                } else {
+                    rep = c == '\uFFFE' || c == '\uFFFF' ? BAD_XML : null;
+                }
+                if (rep != null) {
+                    out.append(s, start, i).append(rep);
+                    start = i + 1;
+                }
+            }
+            out.append(s, start, n);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String unicode(char c) {
+        return String.format("\\u%04x", (int) c);
+    }
+
+}
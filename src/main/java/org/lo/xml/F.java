@@ -1,8 +1,12 @@
 package org.lo.xml;
 
 import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -19,6 +23,7 @@ import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
@@ -26,6 +31,7 @@ import javax.xml.xpath.XPathExpressionException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 /**
@@ -35,6 +41,9 @@ import org.w3c.dom.Node;
  */
 public interface F {
 
+    /** Namespace of xslt elements */
+    public static final String XSLT = "http://www.w3.org/1999/XSL/Transform";
+
     public static Transformer newTransformer(Templates templates) {
         try {
             return templates.newTransformer();
@@ -82,6 +91,39 @@ public interface F {
         }
     }
 
+    /** Parse xml text */
+    public static Document parse(String xml) {
+        return XmlParser.SHARED.parse(xml);
+    }
+
+    public static Document parse(Reader xml) {
+        return XmlParser.SHARED.parse(xml);
+    }
+
+    public static Document parse(InputStream xml) {
+        return XmlParser.SHARED.parse(xml);
+    }
+
+    public static Document parse(Path xml) {
+        return XmlParser.SHARED.parse(xml);
+    }
+
+    public static Document parse(ByteBuffer xml) {
+        return XmlParser.SHARED.parse(xml);
+    }
+
+    /** Read a source into a new namespace-aware document */
+    public static Document toDocument(Source src) {
+        DOMResult dom = new DOMResult(newDocument());
+        try {
+            newTransformer(TransformerFactory.newInstance()).transform(src,
+                dom);
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return (Document) dom.getNode();
+    }
+
     /**
      * If possible, import a node into a document and return the imported node.
      * Otherwise, return the source node.
@@ -98,6 +140,64 @@ public interface F {
         }
     }
 
+    /**
+     * Local name of an xslt element, or null if the node is not an xslt
+     * element. Work with both namespace-aware nodes and nodes built by
+     * {@link Xsl}, whose prefixes are declared by xmlns attributes.
+     */
+    public static String xslName(Node node) {
+        if (!(node instanceof Element)) {
+            return null;
+        }
+        if (node.getNamespaceURI() != null) {
+            return XSLT.equals(node.getNamespaceURI())
+                ? node.getLocalName() : null;
+        }
+        String tag = node.getNodeName();
+        int colon = tag.indexOf(':');
+        String xmlns = colon < 0
+            ? "xmlns" : "xmlns:" + tag.substring(0, colon);
+        for (Node n = node; n instanceof Element; n = n.getParentNode()) {
+            Element e = (Element) n;
+            if (e.hasAttribute(xmlns)) {
+                return XSLT.equals(e.getAttribute(xmlns))
+                    ? tag.substring(colon + 1) : null;
+            }
+        }
+        return null;
+    }
+
+    /** Whether the node is the xslt element of the given local name */
+    public static boolean isXsl(Node node, String name) {
+        return name.equals(xslName(node));
+    }
+
+    /** Element children of a node */
+    public static List<Element> elements(Node parent) {
+        List<Element> ls = new ArrayList<>();
+        for (Node n = parent.getFirstChild(); n != null; n = n
+            .getNextSibling()) {
+            if (n instanceof Element) {
+                ls.add((Element) n);
+            }
+        }
+        return ls;
+    }
+
+    /** The element itself if the node is a document */
+    public static Element root(Node node) {
+        if (node instanceof Document) {
+            return ((Document) node).getDocumentElement();
+        } else {
+            return (Element) node;
+        }
+    }
+
+    /** Evaluate an expression compiled once and cached for all callers */
+    public static Object eval(String expr, Node node, QName type) {
+        return XPaths.SHARED.eval(expr, node, type);
+    }
+
     public static Object eval(XPath xp, String expr, Node node, QName type) {
         try {
             return xp.evaluate(expr, node, type);
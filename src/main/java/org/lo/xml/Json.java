@@ -0,0 +1,196 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build json in a visual way. Like {@link Xml}, the number of leading
+ * {@link #L} gives the depth of a member; commas, closing brackets and escaping
+ * are handled automatically. Members of objects take a key as first argument:
+ *
+ * <pre>
+ * obj();
+ * val(L, "name", "Phuc");
+ * arr(L, "tags");
+ * val(L, L, "xml");
+ * </pre>
+ *
+ * Output is indented when {@link #indent(CharSequence)} is set. Several values
+ * at depth 1 are separated by line-separators. Combine with
+ * {@link #writeTo(Appendable)} to stream large documents.
+ *
+ * @author phuc
+ */
+public abstract class Json extends Str {
+
+    /** An open object or array */
+    private static class Frame {
+        final boolean object;
+        int size;
+
+        Frame(boolean object) {
+            this.object = object;
+        }
+    }
+
+    /** Open containers from the outermost one */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /** Number of values at depth 1 */
+    private int roots;
+
+    /** Build then close all open containers */
+    @Override
+    public Json build() {
+        doBuild();
+        end();
+        flush();
+        return this;
+    }
+
+    /** Open an object; args are L* [key] */
+    public Json obj(Object... args) {
+        return open(true, args);
+    }
+
+    /** Open an array; args are L* [key] */
+    public Json arr(Object... args) {
+        return open(false, args);
+    }
+
+    /**
+     * Add a value; args are L* [key] value. Values can be null, booleans,
+     * numbers or other objects written as strings.
+     */
+    public Json val(Object... args) {
+        int depth = depth(args);
+        int rest = args.length - depth + 1;
+        if (rest == 1) {
+            member(depth, null);
+        } else if (rest == 2) {
+            member(depth, args[args.length - 2]);
+        } else {
+            throw new IllegalArgumentException(
+                "Expect L* [key] value, found " + rest + " arguments");
+        }
+        value(args[args.length - 1]);
+        return this;
+    }
+
+    /** Close all open containers */
+    public Json end() {
+        while (!frames.isEmpty()) {
+            close();
+        }
+        return this;
+    }
+
+    @Override
+    public Json reset() {
+        super.reset();
+        frames.clear();
+        roots = 0;
+        return this;
+    }
+
+    private Json open(boolean object, Object[] args) {
+        int depth = depth(args);
+        int rest = args.length - depth + 1;
+        if (rest > 1) {
+            throw new IllegalArgumentException(
+                "Expect L* [key], found " + rest + " arguments");
+        }
+        member(depth, rest == 1 ? args[args.length - 1] : null);
+        a(object ? "{" : "[");
+        frames.add(new Frame(object));
+        return this;
+    }
+
+    /** Close containers deeper than the member then write its prefix */
+    private void member(int depth, Object key) {
+        if (depth > frames.size() + 1) {
+            throw new IllegalArgumentException(
+                "Expect depth at most " + (frames.size() + 1) + ", found "
+                    + depth);
+        }
+        while (frames.size() >= depth) {
+            close();
+        }
+        if (frames.isEmpty()) {
+            if (key != null) {
+                throw new IllegalArgumentException(
+                    "Expect no key at depth 1, found " + key);
+            }
+            if (roots++ > 0) {
+                l();
+            }
+            return;
+        }
+        Frame parent = frames.get(frames.size() - 1);
+        if (parent.size++ > 0) {
+            a(",");
+        }
+        if (indented()) {
+            l();
+            margin(frames.size());
+        }
+        if (parent.object) {
+            if (key == null) {
+                throw new IllegalArgumentException("Expect key in object");
+            }
+            a("\"").aj(key).a(indented() ? "\": " : "\":");
+        } else if (key != null) {
+            throw new IllegalArgumentException(
+                "Expect no key in array, found " + key);
+        }
+    }
+
+    private void close() {
+        Frame f = frames.remove(frames.size() - 1);
+        if (indented() && f.size > 0) {
+            l();
+            margin(frames.size());
+        }
+        a(f.object ? "}" : "]");
+    }
+
+    private void value(Object v) {
+        if (v == null || v instanceof Boolean) {
+            a(String.valueOf(v));
+        } else if (v instanceof Number) {
+            double d = ((Number) v).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException(
+                    "Expect finite number, found " + v);
+            }
+            a(v);
+        } else {
+            a("\"").aj(v).a("\"");
+        }
+    }
+
+    private void margin(int level) {
+        for (int i = 0; i < level; i++) {
+            a(L);
+        }
+    }
+
+    /** Depth given by the leading L */
+    private static int depth(Object[] args) {
+        int depth = 1;
+        for (Object a : args) {
+            if (a != L) {
+                break;
+            }
+            depth += 1;
+        }
+        for (int i = depth - 1; i < args.length; i++) {
+            if (args[i] == L) {
+                throw new IllegalArgumentException(
+                    "Expect L only before other arguments");
+            }
+        }
+        return depth;
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.lo.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read a file through memory-mapped windows. Bytes are copied once, from the
+ * page cache into the reader's buffer, without the intermediate buffer of a
+ * FileInputStream. Windows are mapped one at a time so files larger than
+ * the address space of one buffer (2GB) can be read.
+ *
+ * @author phuc
+ */
+public class MappedInputStream extends InputStream {
+
+    /** Default size of a mapped window */
+    public static final int WINDOW = 64 << 20;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int window;
+
+    /** Position in the file of the current window */
+    private long start;
+
+    private MappedByteBuffer buf;
+
+    public MappedInputStream(Path file) throws IOException {
+        this(file, WINDOW);
+    }
+
+    public MappedInputStream(Path file, int window) throws IOException {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = window;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return next() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        } else if (!next()) {
+            return -1;
+        }
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && next()) {
+            int k = (int) Math.min(n - skipped, buf.remaining());
+            buf.position(buf.position() + k);
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long read = buf == null ? 0 : start + buf.position();
+        return (int) Math.min(Integer.MAX_VALUE, size - read);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        channel.close();
+    }
+
+    /** Whether there are bytes to read, mapping the next window if needed */
+    private boolean next() throws IOException {
+        if (buf != null && buf.hasRemaining()) {
+            return true;
+        }
+        long pos = buf == null ? 0 : start + buf.limit();
+        if (pos >= size) {
+            return false;
+        }
+        start = pos;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, start,
+            Math.min(window, size - start));
+        return true;
+    }
+
+}
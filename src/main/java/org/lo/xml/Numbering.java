@@ -0,0 +1,276 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Precomputed xsl:number. With level="any" or level="multiple" the engine
+ * scans the preceding or ancestor nodes of every numbered node, which is
+ * quadratic over long documents. This pass numbers the elements of an input
+ * in one walk and stores their formatted numbers in an attribute, so that
+ * the stylesheet reads them with {@link Xsl#xsNumbered(String)}.
+ * <p>
+ * Every element gets the numbers xsl:number would output for it; text and
+ * other nodes are not numbered since they cannot hold the attribute. The
+ * count pattern is required; the default count of xsl:number, nodes having
+ * the name of the current node, depends on the current node.
+ *
+ * @author phuc
+ */
+public class Numbering {
+
+    /** Default name of the attribute holding the formatted numbers */
+    public static final String ATTR = "number";
+
+    private static final int[] ROMAN_VALUES = {
+        1000, 900, 500, 400, 100, 90, 50, 40, 10, 9, 5, 4, 1 };
+
+    private static final String[] ROMAN_DIGITS = {
+        "M", "CM", "D", "CD", "C", "XC", "L", "XL", "X", "IX", "V", "IV", "I" };
+
+    private String count;
+
+    private String from;
+
+    private String level = "single";
+
+    private String attr = ATTR;
+
+    /** Leading and trailing separators, followed by the format tokens */
+    private String prefix = "", suffix = "";
+
+    private final List<String> tokens = new ArrayList<>();
+
+    /** Separator before each format token but the first */
+    private final List<String> separators = new ArrayList<>();
+
+    public Numbering() {
+        format("1");
+    }
+
+    /** Numbering counting nodes matching a pattern */
+    public static Numbering of(String count) {
+        return new Numbering().count(count);
+    }
+
+    /** Numbering of the count, from, level and format of xsl:number */
+    public static Numbering of(Element number) {
+        Numbering n = of(number.getAttribute("count"));
+        if (number.hasAttribute("from")) {
+            n.from(number.getAttribute("from"));
+        }
+        if (number.hasAttribute("level")) {
+            n.level(number.getAttribute("level"));
+        }
+        if (number.hasAttribute("format")) {
+            n.format(number.getAttribute("format"));
+        }
+        return n;
+    }
+
+    public Numbering count(String pattern) {
+        if (pattern == null || pattern.trim().isEmpty()) {
+            throw new IllegalArgumentException("Count pattern is required");
+        }
+        this.count = pattern;
+        return this;
+    }
+
+    /** Restart numbering at nodes matching a pattern, null for no restart */
+    public Numbering from(String pattern) {
+        this.from = pattern;
+        return this;
+    }
+
+    /** One of single, multiple, any */
+    public Numbering level(String level) {
+        if (!level.equals("single") && !level.equals("multiple")
+            && !level.equals("any")) {
+            throw new IllegalArgumentException("Unknown level " + level);
+        }
+        this.level = level;
+        return this;
+    }
+
+    /** Name of the attribute holding the formatted numbers */
+    public Numbering attr(String name) {
+        this.attr = F.checkNotNull(name);
+        return this;
+    }
+
+    public String attr() {
+        return attr;
+    }
+
+    /** Format string as for the format attribute of xsl:number */
+    public Numbering format(String format) {
+        prefix = suffix = "";
+        tokens.clear();
+        separators.clear();
+        int i = 0, n = format.length();
+        while (i < n) {
+            int start = i;
+            while (i < n && !Character.isLetterOrDigit(format.charAt(i))) {
+                i += 1;
+            }
+            String sep = format.substring(start, i);
+            if (i == n) {
+                suffix = sep;
+                break;
+            }
+            if (tokens.isEmpty()) {
+                prefix = sep;
+            } else {
+                separators.add(sep);
+            }
+            start = i;
+            while (i < n && Character.isLetterOrDigit(format.charAt(i))) {
+                i += 1;
+            }
+            tokens.add(format.substring(start, i));
+        }
+        if (tokens.isEmpty()) {
+            tokens.add("1");
+        }
+        return this;
+    }
+
+    /** Return a numbered copy of the input */
+    public Document apply(Node input) {
+        Document doc = F.newDocument();
+        doc.appendChild(doc.importNode(F.root(input), true));
+        annotate(doc);
+        return doc;
+    }
+
+    public Document apply(Supplier<Node> input) {
+        return apply(input.get());
+    }
+
+    /** Number the counted elements of a node in place */
+    public void annotate(Node node) {
+        F.checkNotNull(count);
+        Set<Node> counted = select(count, node);
+        Set<Node> froms = from == null
+            ? Collections.emptySet() : select(from, node);
+        walk(node, counted, froms, Collections.emptyList(), new int[1]);
+    }
+
+    /**
+     * Format a sequence of numbers as xsl:number does; an empty sequence
+     * gives an empty string.
+     */
+    public String format(List<Integer> numbers) {
+        if (numbers.isEmpty()) {
+            return "";
+        }
+        StringBuilder s = new StringBuilder(prefix);
+        for (int i = 0; i < numbers.size(); i++) {
+            if (i > 0) {
+                s.append(separators.isEmpty() ? "."
+                    : separators.get(Math.min(i, separators.size()) - 1));
+            }
+            String token = tokens.get(Math.min(i, tokens.size() - 1));
+            s.append(formatToken(numbers.get(i), token));
+        }
+        return s.append(suffix).toString();
+    }
+
+    /**
+     * Number the children of a parent. The numbers of a child are those of
+     * xsl:number evaluated at the child: the numbers of its nearest counted
+     * ancestor-or-self, the numbers of all its counted ancestors-or-self, or
+     * the count of the counted elements up to it.
+     */
+    private void walk(Node parent, Set<Node> counted, Set<Node> froms,
+        List<Integer> inherited, int[] any) {
+        int siblings = 0;
+        for (Node c = parent.getFirstChild(); c != null; c = c
+            .getNextSibling()) {
+            if (c.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            boolean restart = froms.contains(c);
+            if (restart) {
+                any[0] = 0;
+            }
+            List<Integer> numbers = inherited;
+            if (counted.contains(c)) {
+                siblings += 1;
+                if (level.equals("any")) {
+                    any[0] += 1;
+                } else if (level.equals("single")) {
+                    numbers = Collections.singletonList(siblings);
+                } else {
+                    numbers = new ArrayList<>(inherited);
+                    numbers.add(siblings);
+                }
+            }
+            if (level.equals("any")) {
+                numbers = Collections.singletonList(any[0]);
+            }
+            if (!numbers.isEmpty()) {
+                ((Element) c).setAttribute(attr, format(numbers));
+            }
+            walk(c, counted, froms,
+                restart ? Collections.emptyList() : numbers, any);
+        }
+    }
+
+    private static Set<Node> select(String pattern, Node node) {
+        Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        NodeList ls = (NodeList) F.eval(TrSession.path(pattern), node,
+            XPathConstants.NODESET);
+        for (int i = 0; i < ls.getLength(); i++) {
+            nodes.add(ls.item(i));
+        }
+        return nodes;
+    }
+
+    private static String formatToken(int n, String token) {
+        char c = token.charAt(0);
+        if (token.length() == 1 && n > 0) {
+            if (c == 'a' || c == 'A') {
+                return alphabetic(n, c);
+            } else if ((c == 'i' || c == 'I') && n < 4000) {
+                String roman = roman(n);
+                return c == 'i' ? roman.toLowerCase() : roman;
+            }
+        }
+        int width = token.length();
+        if (width > 1 && token.chars().allMatch(Character::isDigit)) {
+            return String.format("%0" + width + "d", n);
+        }
+        return Integer.toString(n);
+    }
+
+    private static String alphabetic(int n, char first) {
+        StringBuilder s = new StringBuilder();
+        for (; n > 0; n = (n - 1) / 26) {
+            s.append((char) (first + (n - 1) % 26));
+        }
+        return s.reverse().toString();
+    }
+
+    private static String roman(int n) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < ROMAN_VALUES.length; i++) {
+            for (; n >= ROMAN_VALUES[i]; n -= ROMAN_VALUES[i]) {
+                s.append(ROMAN_DIGITS[i]);
+            }
+        }
+        return s.toString();
+    }
+
+}
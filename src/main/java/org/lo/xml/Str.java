@@ -1,6 +1,16 @@
 package org.lo.xml;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -23,6 +33,12 @@ public abstract class Str implements Supplier<String> {
 
     private final StringBuilder sb = new StringBuilder();
 
+    /** Where content is streamed to; null keeps all content in memory */
+    private Appendable out;
+
+    /** Number of buffered chars that triggers streaming to {@link #out} */
+    private int flushSize;
+
     /** Quick instatiation without using {{@link #doBuild()} */
     public static Str of(Object... args) {
         return new Str() {
@@ -44,7 +60,7 @@ public abstract class Str implements Supplier<String> {
     /** Build then return 'this' for chaining. */
     public Str build() {
         doBuild();
-        return this;
+        return flush();
     }
 
     /** Build then return the result string */
@@ -62,6 +78,24 @@ public abstract class Str implements Supplier<String> {
         return sb.toString();
     }
 
+    /**
+     * Read-only view of the content, without copying. The view must not be
+     * used after this is changed.
+     */
+    public CharSequence chars() {
+        return charBuffer();
+    }
+
+    /** Read-only CharBuffer view of the content, without copying */
+    public CharBuffer charBuffer() {
+        return CharBuffer.wrap(sb);
+    }
+
+    /** Reader of the content, without copying */
+    public Reader reader() {
+        return new CharsReader(sb);
+    }
+
     public String format(Object... args) {
         return String.format(sb.toString(), args);
     }
@@ -70,7 +104,7 @@ public abstract class Str implements Supplier<String> {
     public Str a(Object... args) {
         Arrays.stream(args).map(a -> a == L ? this.indent : a)
             .forEach(sb::append);
-        return this;
+        return drain(flushSize);
     }
 
     /** Append args plus a line-separator to the end */
@@ -78,6 +112,35 @@ public abstract class Str implements Supplier<String> {
         return a(args).a(lineSeparator);
     }
 
+    /** Append args as escaped xml text */
+    public Str ax(Object... args) {
+        return escape(Esc::xml, args);
+    }
+
+    /** Append args as escaped value of a double-quoted xml attribute */
+    public Str aa(Object... args) {
+        return escape(Esc::attr, args);
+    }
+
+    /** Append args as escaped content of a json string */
+    public Str aj(Object... args) {
+        return escape(Esc::json, args);
+    }
+
+    private Str escape(BiConsumer<CharSequence, StringBuilder> esc,
+        Object[] args) {
+        for (Object a : args) {
+            if (a == L) {
+                sb.append(indent);
+            } else if (a instanceof CharSequence) {
+                esc.accept((CharSequence) a, sb);
+            } else {
+                esc.accept(String.valueOf(a), sb);
+            }
+        }
+        return drain(flushSize);
+    }
+
     /** Set the string used for indentation */
     public Str indent(CharSequence s) {
         this.indent = s;
@@ -96,4 +159,114 @@ public abstract class Str implements Supplier<String> {
         return this;
     }
 
+    /**
+     * Stream content to the output whenever the buffer holds at least the
+     * given number of chars. Afterward, {@link #get()} only returns content
+     * that has not been streamed yet.
+     */
+    public Str writeTo(Appendable out, int flushSize) {
+        this.out = F.checkNotNull(out);
+        this.flushSize = flushSize;
+        return drain(flushSize);
+    }
+
+    /** Stream content to the output in chunks of 8K chars */
+    public Str writeTo(Appendable out) {
+        return writeTo(out, 8192);
+    }
+
+    /** Stream content to the output as utf-8 */
+    public Str writeTo(OutputStream out) {
+        return writeTo(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /** Stream all buffered content to the output, if there is an output */
+    public Str flush() {
+        drain(0);
+        if (out instanceof Flushable) {
+            try {
+                ((Flushable) out).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this;
+    }
+
+    /** Whether indentation is set */
+    boolean indented() {
+        return indent.length() > 0;
+    }
+
+    /** The buffer itself, for reading without copying */
+    StringBuilder buffer() {
+        return sb;
+    }
+
+    /** Append the content to the output, without copying it to a String */
+    void appendTo(Appendable out) throws IOException {
+        if (out instanceof Writer) {
+            char[] chunk = new char[Math.min(sb.length(), 8192)];
+            for (int i = 0; i < sb.length(); i += chunk.length) {
+                int end = Math.min(sb.length(), i + chunk.length);
+                sb.getChars(i, end, chunk, 0);
+                ((Writer) out).write(chunk, 0, end - i);
+            }
+        } else {
+            out.append(sb);
+        }
+    }
+
+    private Str drain(int minSize) {
+        if (out != null && sb.length() > 0 && sb.length() >= minSize) {
+            try {
+                appendTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            sb.setLength(0);
+        }
+        return this;
+    }
+
+    /**
+     * Clear the content and stop streaming to the output, keeping the buffer
+     * for the next build.
+     */
+    public Str reset() {
+        sb.setLength(0);
+        out = null;
+        flushSize = 0;
+        return this;
+    }
+
+    /** Make room for at least the given number of chars */
+    public Str capacity(int capacity) {
+        sb.ensureCapacity(capacity);
+        return this;
+    }
+
+    /** Number of chars the buffer can hold without growing */
+    public int capacity() {
+        return sb.capacity();
+    }
+
+    /** Number of chars built so far */
+    public int length() {
+        return sb.length();
+    }
+
+    /**
+     * Clear the content; also release the buffer if it holds more than the
+     * given number of chars.
+     */
+    public Str reset(int maxCapacity) {
+        reset();
+        if (sb.capacity() > maxCapacity) {
+            sb.trimToSize();
+            sb.ensureCapacity(maxCapacity);
+        }
+        return this;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+package org.lo.xml;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Independent {@link Str} blocks that are built in parallel then written out
+ * in their given order. Each block keeps its own buffer; blocks are never
+ * concatenated into one buffer unless {@link #get()} is called.
+ *
+ * @author phuc
+ */
+public class StrBlocks implements Supplier<String> {
+
+    private final List<Str> blocks;
+
+    private final ForkJoinPool pool;
+
+    public static StrBlocks of(Str... blocks) {
+        return new StrBlocks(Arrays.asList(blocks));
+    }
+
+    /** Blocks built on the common fork-join pool */
+    public StrBlocks(List<? extends Str> blocks) {
+        this(blocks, ForkJoinPool.commonPool());
+    }
+
+    public StrBlocks(List<? extends Str> blocks, ForkJoinPool pool) {
+        this.blocks = new ArrayList<>(blocks);
+        this.pool = F.checkNotNull(pool);
+    }
+
+    @Override
+    public String toString() {
+        return blocks.toString();
+    }
+
+    /** Build all blocks in parallel then return 'this' for chaining */
+    public StrBlocks build() {
+        invokeAll(blocks.stream()
+            .map(b -> (Callable<Str>) b::build)
+            .collect(toList()));
+        return this;
+    }
+
+    /** Build then return the concatenated result */
+    public String make() {
+        return build().get();
+    }
+
+    /** Concatenate all blocks into one string */
+    @Override
+    public String get() {
+        StringBuilder all = new StringBuilder(length());
+        blocks.forEach(b -> all.append(b.buffer()));
+        return all.toString();
+    }
+
+    /** Total number of chars in all blocks */
+    public int length() {
+        return blocks.stream().mapToInt(Str::length).sum();
+    }
+
+    public List<Str> blocks() {
+        return new ArrayList<>(blocks);
+    }
+
+    /** Write the blocks in order, without concatenating them */
+    public <W extends Writer> W writeTo(W out) {
+        try {
+            for (Str b : blocks) {
+                b.appendTo(out);
+            }
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Encode the blocks in parallel, one buffer per block */
+    public List<ByteBuffer> encode(Charset cs) {
+        return invokeAll(blocks.stream()
+            .map(b -> (Callable<ByteBuffer>) () -> encode(cs, b))
+            .collect(toList()));
+    }
+
+    /**
+     * Encode the blocks in parallel then write them in order with gathering
+     * writes. Return the number of bytes written.
+     */
+    public long writeTo(GatheringByteChannel ch, Charset cs) {
+        ByteBuffer[] buffers = encode(cs).toArray(new ByteBuffer[0]);
+        long written = 0;
+        try {
+            int first = 0;
+            while (first < buffers.length) {
+                written += ch.write(buffers, first, buffers.length - first);
+                while (first < buffers.length
+                    && !buffers[first].hasRemaining()) {
+                    first += 1;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return written;
+    }
+
+    private static ByteBuffer encode(Charset cs, Str block) {
+        try {
+            return cs.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .encode(block.charBuffer());
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /** Run tasks on the pool; return their results in order */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<ForkJoinTask<T>> futures = tasks.stream().map(pool::submit)
+            .collect(toList());
+        return futures.stream().map(ForkJoinTask::join).collect(toList());
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.lo.xml;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of {@link Str} instances so that builds can reuse warm
+ * buffers. Released instances are reset; buffers larger than the retained
+ * capacity are released as well.
+ *
+ * @param <S> type of Str in the pool.
+ *
+ * @author phuc
+ */
+public class StrPool<S extends Str> {
+
+    /** Create instances when the pool is empty */
+    private final Supplier<S> factory;
+
+    /** Capacity given to new instances */
+    private final int initialCapacity;
+
+    /** Max capacity of a buffer kept in the pool */
+    private final int maxCapacity;
+
+    private final BlockingQueue<S> idle;
+
+    public StrPool(Supplier<S> factory, int maxSize, int maxCapacity) {
+        this(factory, maxSize, 16, maxCapacity);
+    }
+
+    public StrPool(
+        Supplier<S> factory,
+        int maxSize,
+        int initialCapacity,
+        int maxCapacity) {
+        if (initialCapacity > maxCapacity) {
+            throw new IllegalArgumentException(
+                "Expect initial capacity not greater than max capacity");
+        }
+        this.factory = F.checkNotNull(factory);
+        this.initialCapacity = initialCapacity;
+        this.maxCapacity = maxCapacity;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return idle.toString();
+    }
+
+    /** Take an empty instance from the pool, or create one */
+    public S acquire() {
+        S s = idle.poll();
+        if (s == null) {
+            s = factory.get();
+            s.capacity(initialCapacity);
+        }
+        return s;
+    }
+
+    /** Reset an instance then keep it if the pool is not full */
+    public void release(S s) {
+        s.reset(maxCapacity);
+        idle.offer(s);
+    }
+
+    /** Build a pooled instance and return the result string */
+    public String make() {
+        return apply(Str::make);
+    }
+
+    /** Apply a function to a pooled instance, then release the instance */
+    public <T> T apply(Function<? super S, T> f) {
+        S s = acquire();
+        try {
+            return f.apply(s);
+        } finally {
+            release(s);
+        }
+    }
+
+    /** Number of idle instances */
+    public int size() {
+        return idle.size();
+    }
+
+}
@@ -1,14 +1,33 @@
 package org.lo.xml;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
 
 /**
  * Xml transformation from different types (string, node, supplier of node). The
@@ -32,6 +51,10 @@ public class Tr {
         return of(c -> c.xsl(xsl));
     }
 
+    public static Tr xsl(CharSequence xsl) {
+        return of(c -> c.xsl(xsl));
+    }
+
     public static Tr of(Consumer<TrCfg> c) {
         TrCfg cfg = new TrCfg();
         c.accept(cfg);
@@ -67,8 +90,98 @@ public class Tr {
         return apply(new DOMSource(node));
     }
 
+    /** Transform xml text, reading it without copying */
+    public String apply(CharSequence xml) {
+        return apply(new CharsReader(xml));
+    }
+
+    public String apply(Reader xml) {
+        return apply(new StreamSource(xml));
+    }
+
     public String apply(Source input) {
         return F.transform(this.tr.get(), input);
     }
 
+    public Document applyToNode(Supplier<Node> node) {
+        return applyToNode(node.get());
+    }
+
+    public Document applyToNode(Node node) {
+        return applyToNode(new DOMSource(node));
+    }
+
+    /**
+     * Transform into a new document, without serializing the output. The
+     * output must have one root element.
+     */
+    public Document applyToNode(Source input) {
+        return (Document) transform(input, new DOMResult(F.newDocument()))
+            .getNode();
+    }
+
+    public DocumentFragment applyToNode(Node node, Document owner) {
+        return applyToNode(new DOMSource(node), owner);
+    }
+
+    /**
+     * Transform into a fragment owned by a document, such as the owner of an
+     * {@link Xml}, so that the output is added to it without being copied.
+     * The fragment holds all the top-level nodes of the output.
+     */
+    public DocumentFragment applyToNode(Source input, Document owner) {
+        return (DocumentFragment) transform(input,
+            new DOMResult(owner.createDocumentFragment())).getNode();
+    }
+
+    public void apply(Node node, ContentHandler handler) {
+        apply(new DOMSource(node), handler);
+    }
+
+    /** Transform into SAX events, without serializing the output */
+    public void apply(Source input, ContentHandler handler) {
+        transform(input, new SAXResult(handler));
+    }
+
+    /** Transform a file, reading it through memory-mapped windows */
+    public String apply(Path xml) {
+        try (InputStream in = new MappedInputStream(xml)) {
+            return apply(source(in, xml));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Transform a file into another file, reading the input through
+     * memory-mapped windows and writing the output to a file channel.
+     */
+    public void apply(Path xml, Path output) {
+        try (InputStream in = new MappedInputStream(xml);
+            OutputStream out = new BufferedOutputStream(
+                Channels.newOutputStream(FileChannel.open(output,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)), 1 << 16)) {
+            StreamResult result = new StreamResult(out);
+            result.setSystemId(output.toUri().toString());
+            transform(source(in, xml), result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <R extends Result> R transform(Source input, R result) {
+        try {
+            this.tr.get().transform(input, result);
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return result;
+    }
+
+    /** Source of a file stream, resolving relative references by the file */
+    private static Source source(InputStream in, Path file) {
+        return new StreamSource(in, file.toUri().toString());
+    }
+
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package org.lo.xml;
 
+import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -30,6 +31,9 @@ public class TrCfg {
 
     public Source xsl;
 
+    /** Compiled xsl, used instead of the xsl source if set */
+    public Templates compiled;
+
     public URIResolver resolver;
 
     public ErrorListener listener;
@@ -41,17 +45,38 @@ public class TrCfg {
     @Override
     public String toString() {
         return Arrays
-            .asList(factory, xsl, resolver, listener, params, outputProps)
+            .asList(factory, xsl, compiled, resolver, listener, params,
+                outputProps)
             .toString();
     }
 
+    /** Copy of the config, so that changing one leaves the other alone */
+    public TrCfg copy() {
+        TrCfg c = new TrCfg();
+        c.factory = factory;
+        c.xsl = xsl;
+        c.compiled = compiled;
+        c.resolver = resolver;
+        c.listener = listener;
+        c.params.putAll(params);
+        c.outputProps.putAll(outputProps);
+        return c;
+    }
+
     public Supplier<Transformer> build() {
         return transformer(transformerFactory());
     }
 
     /** Create Templates given the xsl is set */
     public Templates templates() {
-        return F.newTemplates(transformerFactory(), xsl);
+        return compiled != null
+            ? compiled : F.newTemplates(transformerFactory(), xsl);
+    }
+
+    /** Use compiled xsl, such as Templates cached by {@link XslModules} */
+    public TrCfg templates(Templates compiled) {
+        this.compiled = compiled;
+        return this;
     }
 
     public TrCfg factory(TransformerFactory tf) {
@@ -68,7 +93,16 @@ public class TrCfg {
     }
 
     public TrCfg xsl(String xsl) {
-        return xsl(new StreamSource(new StringReader(xsl)));
+        return xsl(new StringReader(xsl));
+    }
+
+    /** Set xsl text, reading it without copying */
+    public TrCfg xsl(CharSequence xsl) {
+        return xsl(new CharsReader(xsl));
+    }
+
+    public TrCfg xsl(Reader xsl) {
+        return xsl(new StreamSource(xsl));
     }
 
     public TrCfg xsl(Source xsl) {
@@ -155,7 +189,9 @@ public class TrCfg {
     }
 
     private Supplier<Transformer> transformer(TransformerFactory tf) {
-        if (xsl == null) {
+        if (compiled != null) {
+            return () -> transformer(F.newTransformer(compiled));
+        } else if (xsl == null) {
             return () -> transformer(F.newTransformer(tf));
         } else {
             Templates tp = F.newTemplates(tf, xsl);
@@ -0,0 +1,321 @@
+package org.lo.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Transform a stream of inputs published reactively, publishing the outputs
+ * in input order. Demand drives the work: inputs are requested only as far
+ * as the outputs are requested, and at most the given parallelism of inputs
+ * are in flight, so no queue grows without bound.
+ * <p>
+ * The Publisher, Subscriber and Subscription interfaces have the methods and
+ * rules of those of java.util.concurrent.Flow, which is not available on
+ * Java 8. A method reference does not adapt them, since the methods take
+ * each other's types: adapting a Flow.Publisher wraps each Subscriber in a
+ * Flow.Subscriber, and the Flow.Subscription it receives in a Subscription,
+ * the wrappers forwarding their calls one to one. Adapting the other way
+ * wraps the other way round.
+ *
+ * @author phuc
+ */
+public class TrFlow {
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable error);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    private final Tr tr;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    public TrFlow(Tr tr) {
+        this.tr = F.checkNotNull(tr);
+    }
+
+    /** Max number of inputs being transformed at once */
+    public TrFlow parallelism(int inputs) {
+        if (inputs < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = inputs;
+        return this;
+    }
+
+    /** Executor running the transformations */
+    public TrFlow executor(Executor executor) {
+        this.executor = F.checkNotNull(executor);
+        return this;
+    }
+
+    /**
+     * Publisher of the outputs of the inputs as text. It subscribes to the
+     * inputs when it is subscribed to, and accepts one subscriber.
+     */
+    public Publisher<String> apply(Publisher<? extends Source> inputs) {
+        return publish(inputs, in -> F.transform(tr.tr.get(), in));
+    }
+
+    /** Publisher of the outputs as bytes, in the output encoding */
+    public Publisher<ByteBuffer> bytes(Publisher<? extends Source> inputs) {
+        return publish(inputs, in -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                tr.tr.get().transform(in, new StreamResult(out));
+            } catch (TransformerException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        });
+    }
+
+    private <T> Publisher<T> publish(Publisher<? extends Source> inputs,
+        Function<Source, T> transform) {
+        F.checkNotNull(inputs);
+        AtomicInteger subscribed = new AtomicInteger();
+        return subscriber -> {
+            if (subscribed.getAndIncrement() > 0) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException(
+                    "Publisher accepts one subscriber"));
+                return;
+            }
+            Stage<T> stage = new Stage<>(subscriber, transform);
+            subscriber.onSubscribe(stage);
+            inputs.subscribe(stage);
+        };
+    }
+
+    /** An output being computed, in input order */
+    private static class Slot<T> {
+        boolean done;
+        T result;
+        RuntimeException error;
+    }
+
+    /**
+     * Subscriber of the inputs and subscription of the outputs. State is
+     * guarded by the stage; subscribers are called by one thread at a time
+     * in the drain loop, outside of the lock.
+     */
+    private class Stage<T> implements Subscriber<Source>, Subscription {
+        final Subscriber<? super T> downstream;
+        final Function<Source, T> transform;
+        final AtomicInteger wip = new AtomicInteger();
+        final Deque<Slot<T>> slots = new ArrayDeque<>();
+        Subscription upstream;
+
+        /** Outputs requested and not delivered */
+        long demand;
+
+        /** Inputs requested and not received */
+        long requested;
+
+        boolean completed, cancelled;
+
+        Throwable failure;
+
+        Stage(Subscriber<? super T> downstream, Function<Source, T> transform) {
+            this.downstream = downstream;
+            this.transform = transform;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            synchronized (this) {
+                if (upstream != null || cancelled) {
+                    subscription.cancel();
+                    return;
+                }
+                upstream = subscription;
+            }
+            drain();
+        }
+
+        @Override
+        public void onNext(Source input) {
+            Slot<T> slot = new Slot<>();
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                requested -= 1;
+                slots.add(slot);
+            }
+            try {
+                executor.execute(() -> run(slot, input));
+            } catch (RuntimeException e) {
+                finish(slot, null, e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            synchronized (this) {
+                failure = error;
+                completed = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                completed = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    failure = new IllegalArgumentException(
+                        "Request must be positive " + n);
+                    completed = true;
+                    slots.clear();
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            Subscription s;
+            synchronized (this) {
+                cancelled = true;
+                slots.clear();
+                s = upstream;
+            }
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        private void run(Slot<T> slot, Source input) {
+            T result;
+            try {
+                result = transform.apply(input);
+            } catch (RuntimeException e) {
+                finish(slot, null, e);
+                return;
+            }
+            finish(slot, result, null);
+        }
+
+        private void finish(Slot<T> slot, T result, RuntimeException error) {
+            synchronized (this) {
+                slot.result = result;
+                slot.error = error;
+                slot.done = true;
+            }
+            drain();
+        }
+
+        /** Deliver done outputs in order, then request more inputs */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (deliver()) {
+                    continue;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /** Deliver one signal; return whether there may be more */
+        private boolean deliver() {
+            T next = null;
+            Throwable error = null;
+            boolean complete = false;
+            Subscription up;
+            long more = 0;
+            synchronized (this) {
+                if (cancelled) {
+                    return false;
+                }
+                up = upstream;
+                Slot<T> head = slots.peek();
+                if (head != null && head.done && head.error != null) {
+                    error = head.error;
+                } else if (head != null && head.done && demand > 0) {
+                    slots.poll();
+                    demand -= 1;
+                    next = head.result;
+                } else if (head == null && completed) {
+                    error = failure;
+                    complete = failure == null;
+                } else if (up != null && !completed) {
+                    long window = Math.min(parallelism, demand);
+                    more = window - slots.size() - requested;
+                    if (more <= 0) {
+                        return false;
+                    }
+                    requested += more;
+                } else {
+                    return false;
+                }
+                if (error != null || complete) {
+                    cancelled = true;
+                }
+            }
+            if (more > 0) {
+                up.request(more);
+                return true;
+            }
+            if (error != null || complete) {
+                if (up != null) {
+                    up.cancel();
+                }
+            }
+            if (error != null) {
+                downstream.onError(error);
+            } else if (complete) {
+                downstream.onComplete();
+            } else {
+                downstream.onNext(next);
+            }
+            return !complete && error == null;
+        }
+    }
+
+}
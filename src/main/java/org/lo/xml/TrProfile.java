@@ -0,0 +1,380 @@
+package org.lo.xml;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Template-level profile of a transformation. Each xsl:template of the
+ * stylesheet is instrumented with xsl:message markers on entry and exit; the
+ * markers are caught by an ErrorListener to time the templates. Templates of
+ * imported or included stylesheets are not instrumented, their cost goes to
+ * the calling template.
+ * <p>
+ * The stats add up over all transformations until {@link #reset()}. Stacks of
+ * templates can be exported in the collapsed format of flame graphs.
+ *
+ * @author phuc
+ */
+public class TrProfile implements ErrorListener {
+
+    /** Prefix of the messages marking entry to and exit from templates */
+    private static final String MARK = "lo.xml.profile:";
+
+    /** Stats of a template */
+    public static class Entry {
+
+        /** Match pattern, name and mode of the template */
+        public final String template;
+
+        long calls;
+
+        long inclusive;
+
+        long exclusive;
+
+        long output;
+
+        Entry(String template) {
+            this.template = template;
+        }
+
+        public long calls() {
+            return calls;
+        }
+
+        /** Nanoseconds in the template, including called templates */
+        public long inclusiveNanos() {
+            return inclusive;
+        }
+
+        /** Nanoseconds in the template itself */
+        public long exclusiveNanos() {
+            return exclusive;
+        }
+
+        /** Chars written by the template itself */
+        public long outputChars() {
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s calls=%d inclusive=%dns exclusive=%dns"
+                + " output=%d", template, calls, inclusive, exclusive, output);
+        }
+    }
+
+    /** A template being run */
+    private static class Frame {
+        final int template;
+        final long start;
+        final long written;
+
+        /** Time and output of the called templates */
+        long innerTime;
+
+        long innerOutput;
+
+        Frame(int template, long start, long written) {
+            this.template = template;
+            this.start = start;
+            this.written = written;
+        }
+    }
+
+    /** Count chars written through */
+    private static class CountWriter extends FilterWriter {
+        long count;
+
+        CountWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            count += 1;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            count += len;
+        }
+    }
+
+    private final Tr tr;
+
+    private final ErrorListener listener;
+
+    /** Label of each instrumented template */
+    private final List<String> labels = new ArrayList<>();
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** Exclusive nanoseconds by stack of templates */
+    private final Map<String, Long> stacks = new TreeMap<>();
+
+    private final ThreadLocal<Deque<Frame>> frames = ThreadLocal
+        .withInitial(ArrayDeque::new);
+
+    private final ThreadLocal<CountWriter> output = new ThreadLocal<>();
+
+    public static TrProfile xsl(Supplier<Node> xsl) {
+        return xsl(xsl.get());
+    }
+
+    public static TrProfile xsl(Node xsl) {
+        return of(c -> c.xsl(xsl));
+    }
+
+    public static TrProfile of(Consumer<TrCfg> c) {
+        TrCfg cfg = new TrCfg();
+        c.accept(cfg);
+        return new TrProfile(cfg);
+    }
+
+    /**
+     * Profile transformations of the config, using a copy of it with an
+     * instrumented xsl. The error listener of the config, or else the one of
+     * the factory, gets the other messages. The config is not changed.
+     */
+    public TrProfile(TrCfg cfg) {
+        Source xsl = F.checkNotNull(cfg.xsl);
+        this.listener = cfg.listener != null ? cfg.listener
+            : factory(cfg).getErrorListener();
+        Document doc = instrument(read(cfg, xsl));
+        this.tr = new Tr(cfg.copy()
+            .xsl(new DOMSource(doc, xsl.getSystemId()))
+            .errorListener(this));
+        labels.forEach(l -> entries.add(new Entry(l)));
+    }
+
+    @Override
+    public String toString() {
+        return entries().toString();
+    }
+
+    public String apply(Supplier<Node> node) {
+        return apply(node.get());
+    }
+
+    public String apply(Node node) {
+        return apply(new DOMSource(node));
+    }
+
+    /** Transform while profiling, return the output */
+    public String apply(Source input) {
+        StringWriter sw = new StringWriter();
+        CountWriter out = new CountWriter(sw);
+        output.set(out);
+        try {
+            tr.tr.get().transform(input, new StreamResult(out));
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            output.remove();
+            frames.remove();
+        }
+        return sw.toString();
+    }
+
+    /** Stats of the templates, most exclusive time first */
+    public synchronized List<Entry> entries() {
+        List<Entry> ls = new ArrayList<>();
+        for (Entry e : entries) {
+            Entry copy = new Entry(e.template);
+            copy.calls = e.calls;
+            copy.inclusive = e.inclusive;
+            copy.exclusive = e.exclusive;
+            copy.output = e.output;
+            ls.add(copy);
+        }
+        ls.sort(Comparator.comparingLong(Entry::exclusiveNanos).reversed());
+        return ls;
+    }
+
+    /**
+     * Stacks of templates with their exclusive nanoseconds, one stack per
+     * line, in the collapsed format of flame graphs.
+     */
+    public synchronized String collapsed() {
+        return stacks.entrySet().stream()
+            .map(e -> e.getKey() + " " + e.getValue() + "\n")
+            .collect(Collectors.joining());
+    }
+
+    /** Write the collapsed stacks to a file */
+    public Path writeCollapsed(Path file) {
+        try {
+            return Files.write(file,
+                collapsed().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void reset() {
+        entries.clear();
+        labels.forEach(l -> entries.add(new Entry(l)));
+        stacks.clear();
+    }
+
+    @Override
+    public void warning(TransformerException e) throws TransformerException {
+        String msg = e.getMessage();
+        if (msg != null && msg.startsWith(MARK)) {
+            mark(msg.substring(MARK.length()));
+        } else if (listener != null) {
+            listener.warning(e);
+        }
+    }
+
+    @Override
+    public void error(TransformerException e) throws TransformerException {
+        if (listener == null) {
+            throw e;
+        }
+        listener.error(e);
+    }
+
+    @Override
+    public void fatalError(TransformerException e)
+        throws TransformerException {
+        if (listener == null) {
+            throw e;
+        }
+        listener.fatalError(e);
+    }
+
+    /** Enter a template on +id, exit it on -id */
+    private void mark(String mark) {
+        long now = System.nanoTime();
+        CountWriter out = output.get();
+        long written = out == null ? 0 : out.count;
+        Deque<Frame> stack = frames.get();
+        int id = Integer.parseInt(mark.substring(1));
+        if (mark.charAt(0) == '+') {
+            stack.push(new Frame(id, now, written));
+            return;
+        }
+        Frame f = stack.pop();
+        long time = now - f.start;
+        long chars = written - f.written;
+        Frame caller = stack.peek();
+        if (caller != null) {
+            caller.innerTime += time;
+            caller.innerOutput += chars;
+        }
+        boolean recursive = stack.stream().anyMatch(c -> c.template == id);
+        String path = stack.stream()
+            .map(c -> labels.get(c.template))
+            .reduce(labels.get(id), (p, c) -> c + ";" + p);
+        synchronized (this) {
+            Entry e = entries.get(id);
+            e.calls += 1;
+            e.inclusive += recursive ? 0 : time;
+            e.exclusive += time - f.innerTime;
+            e.output += chars - f.innerOutput;
+            stacks.merge(path, time - f.innerTime, Long::sum);
+        }
+    }
+
+    /** Read the xsl into a DOM that can be changed */
+    private static Document read(TrCfg cfg, Source xsl) {
+        TransformerFactory tf = factory(cfg);
+        DOMResult dom = new DOMResult(F.newDocument());
+        try {
+            F.newTransformer(tf).transform(xsl, dom);
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return (Document) dom.getNode();
+    }
+
+    private static TransformerFactory factory(TrCfg cfg) {
+        return cfg.factory == null
+            ? TransformerFactory.newInstance() : cfg.factory;
+    }
+
+    /** Add entry and exit markers to the top-level templates */
+    private Document instrument(Document doc) {
+        for (Element t : F.elements(doc.getDocumentElement())) {
+            if (!F.isXsl(t, "template")) {
+                continue;
+            }
+            int id = labels.size();
+            labels.add(label(t));
+            Node first = t.getFirstChild();
+            while (first != null && (F.isXsl(first, "param")
+                || first.getNodeType() == Node.COMMENT_NODE
+                || first.getNodeType() == Node.TEXT_NODE
+                    && first.getNodeValue().trim().isEmpty())) {
+                first = first.getNextSibling();
+            }
+            t.insertBefore(message(t, "+" + id), first);
+            t.appendChild(message(t, "-" + id));
+        }
+        return doc;
+    }
+
+    private static Element message(Element template, String mark) {
+        String tag = template.getTagName();
+        String qname = tag.substring(0, tag.indexOf(':') + 1) + "message";
+        Element msg = template.getOwnerDocument()
+            .createElementNS(F.XSLT, qname);
+        msg.setTextContent(MARK + mark);
+        return msg;
+    }
+
+    /** Label of a template, usable as a frame of collapsed stacks */
+    private static String label(Element template) {
+        StringBuilder sb = new StringBuilder();
+        if (template.hasAttribute("match")) {
+            sb.append("match=").append(template.getAttribute("match"));
+        }
+        if (template.hasAttribute("name")) {
+            sb.append(sb.length() > 0 ? "," : "")
+                .append("name=").append(template.getAttribute("name"));
+        }
+        if (template.hasAttribute("mode")) {
+            sb.append(",mode=").append(template.getAttribute("mode"));
+        }
+        return sb.toString().replace(';', ',').replaceAll("\\s+", "");
+    }
+
+}
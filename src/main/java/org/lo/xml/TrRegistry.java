@@ -0,0 +1,244 @@
+package org.lo.xml;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Stylesheets by name, compiled from files and reloaded when the files
+ * change. A changed file is compiled in the background; the new Templates
+ * replaces the old one only if it compiles, otherwise the previous version
+ * keeps serving. Transformations read the current version without locking,
+ * so a reload never blocks them and a transformation in flight finishes with
+ * the version it started with.
+ *
+ * @author phuc
+ */
+public class TrRegistry implements AutoCloseable {
+
+    /** A compiled version of a stylesheet */
+    private static class Version {
+        final Templates templates;
+        final Supplier<Transformer> tr;
+        final long number;
+
+        Version(Templates templates, Supplier<Transformer> tr, long number) {
+            this.templates = templates;
+            this.tr = tr;
+            this.number = number;
+        }
+    }
+
+    /** A registered stylesheet and its current version */
+    private static class Entry {
+        final Path file;
+        final AtomicReference<Version> current = new AtomicReference<>();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final AtomicLong failures = new AtomicLong();
+
+        Entry(Path file) {
+            this.file = file;
+        }
+    }
+
+    /** Config of each compilation, besides the xsl */
+    private final Consumer<TrCfg> cfg;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Watched directories */
+    private final Set<Path> dirs = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService compiler;
+
+    private final WatchService watcher;
+
+    private final Thread watch;
+
+    public TrRegistry() {
+        this(c -> {});
+    }
+
+    /**
+     * Registry compiling with a config such as resolver, params and output
+     * properties, which is applied anew for each compilation.
+     */
+    public TrRegistry(Consumer<TrCfg> cfg) {
+        this.cfg = F.checkNotNull(cfg);
+        this.compiler = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "TrRegistry-compiler");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            this.watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.watch = new Thread(this::watch, "TrRegistry-watch");
+        this.watch.setDaemon(true);
+        this.watch.start();
+    }
+
+    @Override
+    public String toString() {
+        return names().toString();
+    }
+
+    /**
+     * Register a stylesheet file under a name, compiling it now and watching
+     * it for changes.
+     *
+     * @throws IllegalArgumentException if the file does not compile
+     */
+    public TrRegistry register(String name, Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        Entry e = new Entry(path);
+        e.current.set(compile(path, 1));
+        entries.put(name, e);
+        Path dir = path.getParent();
+        if (dirs.add(dir)) {
+            try {
+                dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            } catch (IOException ex) {
+                dirs.remove(dir);
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return this;
+    }
+
+    public TrRegistry unregister(String name) {
+        entries.remove(name);
+        return this;
+    }
+
+    public Set<String> names() {
+        return new TreeSet<>(entries.keySet());
+    }
+
+    /**
+     * Transformation of a stylesheet; each transformation uses the version
+     * current when it starts.
+     */
+    public Tr tr(String name) {
+        Entry e = entry(name);
+        return new Tr(() -> e.current.get().tr.get());
+    }
+
+    /** Current compiled version of a stylesheet */
+    public Templates templates(String name) {
+        return entry(name).current.get().templates;
+    }
+
+    /** Number of the current version, starting at 1 */
+    public long version(String name) {
+        return entry(name).current.get().number;
+    }
+
+    /** Number of reloads that failed to compile */
+    public long failures(String name) {
+        return entry(name).failures.get();
+    }
+
+    /** Error of the last failed reload, null if none failed */
+    public Exception error(String name) {
+        return entry(name).error.get();
+    }
+
+    /**
+     * Compile a stylesheet again in the background. The future completes
+     * with the new Templates, or exceptionally if the file does not compile,
+     * in which case the previous version is kept.
+     */
+    public CompletableFuture<Templates> reload(String name) {
+        Entry e = entry(name);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Version v = compile(e.file, e.current.get().number + 1);
+                e.current.set(v);
+                return v.templates;
+            } catch (RuntimeException ex) {
+                e.failures.incrementAndGet();
+                e.error.set(ex);
+                throw ex;
+            }
+        }, compiler);
+    }
+
+    /** Stop watching files; registered stylesheets keep serving */
+    @Override
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            compiler.shutdown();
+        }
+    }
+
+    private Entry entry(String name) {
+        Entry e = entries.get(name);
+        if (e == null) {
+            throw new IllegalArgumentException("No stylesheet " + name);
+        }
+        return e;
+    }
+
+    private Version compile(Path file, long number) {
+        TrCfg c = new TrCfg();
+        cfg.accept(c);
+        c.xsl(new StreamSource(file.toFile()));
+        Templates tp = c.templates();
+        return new Version(tp, c.templates(tp).build(), number);
+    }
+
+    /** Reload the stylesheets whose files are created or modified */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (!(event.context() instanceof Path)) {
+                        continue;
+                    }
+                    Path file = dir.resolve((Path) event.context());
+                    entries.forEach((name, e) -> {
+                        if (e.file.equals(file)) {
+                            reload(name);
+                        }
+                    });
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed, stop watching
+        }
+    }
+
+}
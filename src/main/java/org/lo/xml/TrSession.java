@@ -0,0 +1,174 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Repeated transformations of one input with different params. The xsl is
+ * compiled once and the input is read once. Tables of the xsl:key
+ * declarations are built once over the input for lookups in Java by
+ * {@link #key(String, String)}.
+ * <p>
+ * The tables do not speed up key() in the stylesheet: the engine builds its
+ * own key tables over the input on every transformation and cannot take
+ * prebuilt ones, so stylesheets calling key() cost the same as with
+ * {@link Tr}.
+ *
+ * @author phuc
+ */
+public class TrSession {
+
+    private final Templates templates;
+
+    private final TrCfg cfg;
+
+    private final Node input;
+
+    /** Nodes by value by key name */
+    private final Map<String, Map<String, List<Node>>> keys = new HashMap<>();
+
+    public static TrSession of(Consumer<TrCfg> c, Supplier<Node> input) {
+        return of(c, input.get());
+    }
+
+    public static TrSession of(Consumer<TrCfg> c, Node input) {
+        TrCfg cfg = new TrCfg();
+        c.accept(cfg);
+        return new TrSession(cfg, input);
+    }
+
+    /** Session over an input source, which is read once into a DOM */
+    public static TrSession of(Consumer<TrCfg> c, Source input) {
+        return of(c, F.toDocument(input));
+    }
+
+    /**
+     * Session of a config having xsl as a source. The params of the config
+     * are defaults for all transformations. The config is copied, not
+     * changed.
+     */
+    public TrSession(TrCfg cfg, Node input) {
+        Source xsl = F.checkNotNull(cfg.xsl);
+        Document doc = F.toDocument(xsl);
+        this.cfg = cfg.copy().xsl(new DOMSource(doc, xsl.getSystemId()));
+        this.templates = this.cfg.templates();
+        this.input = F.checkNotNull(input);
+        index(doc.getDocumentElement());
+    }
+
+    @Override
+    public String toString() {
+        return keys.keySet().toString();
+    }
+
+    public String apply() {
+        return apply(Collections.emptyMap());
+    }
+
+    public String apply(String param, Object value) {
+        return apply(Collections.singletonMap(param, value));
+    }
+
+    /** Transform the input with params added to the default ones */
+    public String apply(Map<String, ?> params) {
+        Transformer tr = F.newTransformer(templates);
+        if (cfg.resolver != null) {
+            tr.setURIResolver(cfg.resolver);
+        }
+        if (cfg.listener != null) {
+            tr.setErrorListener(cfg.listener);
+        }
+        cfg.outputProps.forEach(tr::setOutputProperty);
+        cfg.params.forEach(tr::setParameter);
+        params.forEach(tr::setParameter);
+        return F.transform(tr, new DOMSource(input));
+    }
+
+    /** Nodes of a key having a value, in document order */
+    public List<Node> key(String name, String value) {
+        Map<String, List<Node>> table = keys.get(name);
+        if (table == null) {
+            throw new IllegalArgumentException("No key " + name);
+        }
+        List<Node> nodes = table.get(value);
+        return nodes == null
+            ? Collections.emptyList() : Collections.unmodifiableList(nodes);
+    }
+
+    /** Build the tables of the xsl:key declarations */
+    private void index(Element xsl) {
+        XPath xp = XPathFactory.newInstance().newXPath();
+        for (Element k : F.elements(xsl)) {
+            if (!F.isXsl(k, "key")) {
+                continue;
+            }
+            Map<String, List<Node>> table = keys.computeIfAbsent(
+                k.getAttribute("name"), n -> new LinkedHashMap<>());
+            NodeList matched = (NodeList) F.eval(xp,
+                path(k.getAttribute("match")), input, XPathConstants.NODESET);
+            String use = k.getAttribute("use");
+            for (int i = 0; i < matched.getLength(); i++) {
+                Node n = matched.item(i);
+                for (String v : values(xp, use, n)) {
+                    table.computeIfAbsent(v, x -> new ArrayList<>()).add(n);
+                }
+            }
+        }
+    }
+
+    /** Key values of a node: string values of a node-set, or a string */
+    private static List<String> values(XPath xp, String use, Node node) {
+        List<String> values = new ArrayList<>();
+        try {
+            NodeList ls = (NodeList) xp.evaluate(use, node,
+                XPathConstants.NODESET);
+            for (int i = 0; i < ls.getLength(); i++) {
+                values.add(ls.item(i).getTextContent());
+            }
+        } catch (XPathExpressionException e) {
+            values.add((String) F.eval(xp, use, node, XPathConstants.STRING));
+        }
+        return values;
+    }
+
+    /** Path selecting the nodes matching a pattern */
+    static String path(String pattern) {
+        List<String> paths = new ArrayList<>();
+        String s = XslLint.blankLiterals(pattern);
+        int depth = 0, start = 0;
+        for (int i = 0; i <= s.length(); i++) {
+            char c = i < s.length() ? s.charAt(i) : '|';
+            if (c == '[' || c == '(') {
+                depth += 1;
+            } else if (c == ']' || c == ')') {
+                depth -= 1;
+            } else if (c == '|' && depth == 0) {
+                String p = pattern.substring(start, i).trim();
+                paths.add(p.startsWith("/") ? p : "//" + p);
+                start = i + 1;
+            }
+        }
+        return String.join(" | ", paths);
+    }
+
+}
@@ -0,0 +1,530 @@
+package org.lo.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * External sort of the records of a large input, as a stage before
+ * {@link Tr#apply(Reader)}. Records are the children of the root element
+ * having the given name; they are sorted by keys given as xsl:sort elements,
+ * such as those built by {@link Xsl#xsSort(String, org.w3c.dom.Attr...)},
+ * with the attributes select, data-type, order and case-order.
+ * <p>
+ * Records are read in runs of bounded size; each run is sorted then spilled to
+ * a temp file, and the runs are merged while the sorted document is read.
+ * Records with equal keys keep their input order. Other children of the root
+ * are kept before the records.
+ *
+ * @author phuc
+ */
+public class TrSort {
+
+    /** A sort key, as given by xsl:sort */
+    private static class Key {
+        final XPathExpression select;
+        final boolean number;
+        final boolean descending;
+
+        /** Case first on ties, 1 for upper, -1 for lower, 0 for none */
+        final int caseOrder;
+
+        Key(Element sort) {
+            String select = sort.getAttribute("select");
+            try {
+                this.select = XPathFactory.newInstance().newXPath()
+                    .compile(select.isEmpty() ? "." : select);
+            } catch (XPathExpressionException e) {
+                throw new IllegalArgumentException(e);
+            }
+            this.number = "number".equals(sort.getAttribute("data-type"));
+            this.descending = "descending".equals(sort.getAttribute("order"));
+            String caseOrder = sort.getAttribute("case-order");
+            this.caseOrder = "upper-first".equals(caseOrder) ? 1
+                : "lower-first".equals(caseOrder) ? -1 : 0;
+        }
+    }
+
+    /** A record: its xml text, its keys and its input position */
+    private static class Rec {
+        final long seq;
+        final Object[] keys;
+        final String xml;
+
+        Rec(long seq, Object[] keys, String xml) {
+            this.seq = seq;
+            this.keys = keys;
+            this.xml = xml;
+        }
+    }
+
+    private final String record;
+
+    private final List<Key> keys = new ArrayList<>();
+
+    private final Collator collator = Collator.getInstance();
+
+    private int runSize = 10000;
+
+    private Path tempDir;
+
+    /** Sort records having a name by the keys of the xsl:sort elements */
+    public static TrSort of(String record, Node... sorts) {
+        List<Element> ls = new ArrayList<>();
+        for (Node n : sorts) {
+            ls.add(F.root(n));
+        }
+        return new TrSort(record, ls);
+    }
+
+    /**
+     * Sort records by the keys of the xsl:sort elements.
+     *
+     * @param record = name of the records, null for all child elements
+     */
+    public TrSort(String record, List<Element> sorts) {
+        this.record = record;
+        for (Element sort : sorts) {
+            String tag = sort.getTagName();
+            if (!"sort".equals(tag.substring(tag.indexOf(':') + 1))) {
+                throw new IllegalArgumentException("Expect xsl:sort " + sort);
+            }
+            keys.add(new Key(sort));
+        }
+    }
+
+    /** Max number of records held in memory */
+    public TrSort runSize(int records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("Run size must be positive");
+        }
+        this.runSize = records;
+        return this;
+    }
+
+    /** Directory of the run files, null for the default temp directory */
+    public TrSort tempDir(Path dir) {
+        this.tempDir = dir;
+        return this;
+    }
+
+    /** Sort then transform the input */
+    public String apply(Tr tr, Source input) {
+        try (Reader sorted = sort(input)) {
+            return tr.apply(sorted);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Reader sort(Reader input) {
+        return sort(new StreamSource(input));
+    }
+
+    public Reader sort(InputStream input) {
+        return sort(new StreamSource(input));
+    }
+
+    /**
+     * Read the records into sorted runs, then return the sorted document as
+     * a Reader merging the runs. Closing the Reader deletes the run files.
+     */
+    public Reader sort(Source input) {
+        List<Path> files = new ArrayList<>();
+        try {
+            XMLStreamReader r = XMLInputFactory.newInstance()
+                .createXMLStreamReader(input);
+            StringBuilder head = new StringBuilder();
+            String tail = head(r, head);
+            Document doc = F.newDocument();
+            List<Rec> run = new ArrayList<>();
+            long seq = 0;
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.START_ELEMENT
+                    && (record == null
+                        || record.equals(qname(r.getPrefix(),
+                            r.getLocalName())))) {
+                    StringBuilder xml = new StringBuilder();
+                    Element e = element(r, doc, xml);
+                    run.add(new Rec(seq++, keys(e), xml.toString()));
+                    if (run.size() >= runSize) {
+                        files.add(spill(run));
+                        run.clear();
+                    }
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    element(r, doc, head);
+                } else if (event == XMLStreamConstants.CHARACTERS
+                    && !r.isWhiteSpace()
+                    || event == XMLStreamConstants.CDATA) {
+                    Esc.xml(r.getText(), head);
+                }
+            }
+            r.close();
+            run.sort(this::compare);
+            return new Merge(head.toString(), tail, files, run.iterator());
+        } catch (XMLStreamException e) {
+            delete(files);
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            delete(files);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Write the start tag of the root element, return its end tag */
+    private static String head(XMLStreamReader r, StringBuilder head)
+        throws XMLStreamException {
+        while (r.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+        }
+        String name = qname(r.getPrefix(), r.getLocalName());
+        head.append('<').append(name);
+        attributes(r, head, null);
+        head.append('>');
+        return "</" + name + ">";
+    }
+
+    /** Read the current element into xml text and a DOM element */
+    private static Element element(
+        XMLStreamReader r,
+        Document doc,
+        StringBuilder xml) throws XMLStreamException {
+        Element root = null;
+        Node parent = doc;
+        int depth = 0;
+        do {
+            switch (r.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                String name = qname(r.getPrefix(), r.getLocalName());
+                String uri = r.getNamespaceURI();
+                Element e = doc.createElementNS(
+                    uri == null || uri.isEmpty() ? null : uri, name);
+                xml.append('<').append(name);
+                attributes(r, xml, e);
+                xml.append('>');
+                if (root == null) {
+                    root = e;
+                } else {
+                    parent.appendChild(e);
+                }
+                parent = e;
+                depth += 1;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                xml.append("</")
+                    .append(qname(r.getPrefix(), r.getLocalName()))
+                    .append('>');
+                parent = parent.getParentNode();
+                depth -= 1;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                Esc.xml(r.getText(), xml);
+                parent.appendChild(doc.createTextNode(r.getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                xml.append("<!--").append(r.getText()).append("-->");
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                xml.append("<?").append(r.getPITarget()).append(' ')
+                    .append(r.getPIData()).append("?>");
+                break;
+            default:
+                break;
+            }
+        } while (depth > 0 && r.hasNext() && r.next() > 0);
+        return root;
+    }
+
+    /** Write namespaces and attributes; set the attributes if e is not null */
+    private static void attributes(
+        XMLStreamReader r,
+        StringBuilder xml,
+        Element e) {
+        for (int i = 0; i < r.getNamespaceCount(); i++) {
+            String prefix = r.getNamespacePrefix(i);
+            String name = qname(prefix == null ? null : "xmlns",
+                prefix == null ? "xmlns" : prefix);
+            xml.append(' ').append(name).append("=\"");
+            Esc.attr(r.getNamespaceURI(i), xml).append('"');
+        }
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            String name = qname(r.getAttributePrefix(i),
+                r.getAttributeLocalName(i));
+            xml.append(' ').append(name).append("=\"");
+            Esc.attr(r.getAttributeValue(i), xml).append('"');
+            if (e != null) {
+                String uri = r.getAttributeNamespace(i);
+                e.setAttributeNS(uri == null || uri.isEmpty() ? null : uri,
+                    name, r.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static String qname(String prefix, String local) {
+        return prefix == null || prefix.isEmpty()
+            ? local : prefix + ":" + local;
+    }
+
+    private Object[] keys(Element e) {
+        Object[] values = new Object[keys.size()];
+        for (int i = 0; i < values.length; i++) {
+            Key k = keys.get(i);
+            String s;
+            try {
+                s = (String) k.select.evaluate(e, XPathConstants.STRING);
+            } catch (XPathExpressionException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+            values[i] = k.number ? number(s) : s;
+        }
+        return values;
+    }
+
+    /** Number of a string as in xpath, NaN if it is not a number */
+    private static Double number(String s) {
+        String t = s.trim();
+        if (!t.matches("-?(\\d+(\\.\\d*)?|\\.\\d+)")) {
+            return Double.NaN;
+        }
+        return Double.valueOf(t);
+    }
+
+    private int compare(Rec a, Rec b) {
+        for (int i = 0; i < keys.size(); i++) {
+            Key k = keys.get(i);
+            int c = k.number
+                ? compare((Double) a.keys[i], (Double) b.keys[i])
+                : compare((String) a.keys[i], (String) b.keys[i], k.caseOrder);
+            if (c != 0) {
+                return k.descending ? -c : c;
+            }
+        }
+        return Long.compare(a.seq, b.seq);
+    }
+
+    /** NaN comes first, as in xsl:sort */
+    private static int compare(Double a, Double b) {
+        if (a.isNaN() || b.isNaN()) {
+            return Boolean.compare(!a.isNaN(), !b.isNaN());
+        }
+        return Double.compare(a, b);
+    }
+
+    private int compare(String a, String b, int caseOrder) {
+        if (caseOrder != 0 && a.equalsIgnoreCase(b)) {
+            for (int i = 0; i < a.length(); i++) {
+                char x = a.charAt(i), y = b.charAt(i);
+                if (x != y) {
+                    return Character.isUpperCase(x) ? -caseOrder : caseOrder;
+                }
+            }
+            return 0;
+        }
+        return collator.compare(a, b);
+    }
+
+    /** Sort a run then write it to a temp file */
+    private Path spill(List<Rec> run) throws IOException {
+        run.sort(this::compare);
+        Path file = tempDir == null ? Files.createTempFile("trsort", ".run")
+            : Files.createTempFile(tempDir, "trsort", ".run");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(file)))) {
+            for (Rec rec : run) {
+                out.writeLong(rec.seq);
+                for (int i = 0; i < keys.size(); i++) {
+                    if (keys.get(i).number) {
+                        out.writeDouble((Double) rec.keys[i]);
+                    } else {
+                        write(out, (String) rec.keys[i]);
+                    }
+                }
+                write(out, rec.xml);
+            }
+        }
+        return file;
+    }
+
+    private Rec readRec(DataInputStream in) throws IOException {
+        long seq;
+        try {
+            seq = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        Object[] values = new Object[keys.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = keys.get(i).number ? (Object) in.readDouble()
+                : read(in);
+        }
+        return new Rec(seq, values, read(in));
+    }
+
+    private static void write(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String read(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void delete(List<Path> files) {
+        for (Path f : files) {
+            try {
+                Files.deleteIfExists(f);
+            } catch (IOException e) {
+                f.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /** Records of a sorted run, read one at a time */
+    private class Run {
+        final Iterator<Rec> records;
+        final DataInputStream in;
+        Rec current;
+
+        Run(Iterator<Rec> records) {
+            this.records = records;
+            this.in = null;
+        }
+
+        Run(Path file) throws IOException {
+            this.records = null;
+            this.in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)));
+        }
+
+        /** Move to the next record, return false at the end */
+        boolean next() throws IOException {
+            if (in == null) {
+                current = records.hasNext() ? records.next() : null;
+            } else {
+                current = readRec(in);
+                if (current == null) {
+                    in.close();
+                }
+            }
+            return current != null;
+        }
+    }
+
+    /** Sorted document, merging runs on reading */
+    private class Merge extends Reader {
+        private final List<Path> files;
+        private final List<Run> runs = new ArrayList<>();
+        private final PriorityQueue<Run> queue;
+        private String tail;
+
+        /** Text being read and the position in it */
+        private String text;
+        private int pos;
+
+        Merge(String head, String tail, List<Path> files, Iterator<Rec> last)
+            throws IOException {
+            this.files = files;
+            this.tail = tail;
+            this.text = head;
+            Comparator<Run> order = (a, b) -> compare(a.current, b.current);
+            this.queue = new PriorityQueue<>(files.size() + 1, order);
+            try {
+                for (Path f : files) {
+                    runs.add(new Run(f));
+                }
+                runs.add(new Run(last));
+                for (Run r : runs) {
+                    if (r.next()) {
+                        queue.add(r);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (text != null && pos >= text.length()) {
+                text = nextText();
+                pos = 0;
+            }
+            if (text == null) {
+                return -1;
+            }
+            int n = Math.min(len, text.length() - pos);
+            text.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            return n;
+        }
+
+        /** Next record, then the end tag of the root, then null */
+        private String nextText() throws IOException {
+            Run r = queue.poll();
+            if (r == null) {
+                String t = tail;
+                tail = null;
+                return t;
+            }
+            String xml = r.current.xml;
+            if (r.next()) {
+                queue.add(r);
+            }
+            return xml;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Run r : runs) {
+                if (r.in != null) {
+                    r.in.close();
+                }
+            }
+            queue.clear();
+            text = null;
+            delete(files);
+        }
+    }
+
+}
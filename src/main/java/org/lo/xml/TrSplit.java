@@ -0,0 +1,288 @@
+package org.lo.xml;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Transform a large input one record at a time. Records are the elements at
+ * a path, read by a StAX reader into small documents that are transformed
+ * independently, so memory is bounded by the largest record rather than the
+ * input. Outputs are written in input order between a start and an end
+ * text. Content outside the records is dropped.
+ * <p>
+ * The path is a list of element names separated by '/': an absolute path
+ * such as /orders/order matches from the root, a relative path such as
+ * order or orders/order matches at any depth. Records are not searched for
+ * nested records.
+ * <p>
+ * Transformers are pooled and reused; the xml declaration is omitted from
+ * the output of each record.
+ *
+ * @author phuc
+ */
+public class TrSplit {
+
+    private final Tr tr;
+
+    private final List<String> path;
+
+    private final boolean absolute;
+
+    private int parallelism = 1;
+
+    private String start = "", end = "";
+
+    /** Transformers not in use */
+    private final Queue<Transformer> pool = new ConcurrentLinkedQueue<>();
+
+    public TrSplit(Tr tr, String path) {
+        this.tr = F.checkNotNull(tr);
+        this.absolute = path.startsWith("/");
+        this.path = new ArrayList<>(Arrays.asList(
+            path.substring(absolute ? 1 : 0).split("/")));
+        if (this.path.contains("")) {
+            throw new IllegalArgumentException("Invalid path " + path);
+        }
+    }
+
+    /** Number of threads transforming records, 1 to transform in order */
+    public TrSplit parallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.parallelism = threads;
+        return this;
+    }
+
+    /** Write the outputs of the records between start and end texts */
+    public TrSplit wrap(String start, String end) {
+        this.start = F.checkNotNull(start);
+        this.end = F.checkNotNull(end);
+        return this;
+    }
+
+    /** Write the outputs of the records inside an element */
+    public TrSplit wrap(String tag) {
+        return wrap("<" + tag + ">", "</" + tag + ">");
+    }
+
+    public String apply(Reader input) {
+        return apply(new StreamSource(input));
+    }
+
+    public String apply(Source input) {
+        StringWriter out = new StringWriter();
+        apply(input, out);
+        return out.toString();
+    }
+
+    /**
+     * Transform a file into another file as utf-8, reading the input through
+     * memory-mapped windows. Return the number of records.
+     */
+    public long apply(Path input, Path output) {
+        try (InputStream in = new MappedInputStream(input);
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(output), StandardCharsets.UTF_8))) {
+            return apply(new StreamSource(in, input.toUri().toString()),
+                out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Transform the records of an input, return the number of records */
+    public long apply(Source input, Writer out) {
+        ExecutorService workers = parallelism == 1
+            ? null : Executors.newFixedThreadPool(parallelism);
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            XMLStreamReader r = factory.createXMLStreamReader(input);
+            Deque<Future<String>> pending = new ArrayDeque<>();
+            List<String> names = new ArrayList<>();
+            long count = 0;
+            out.write(start);
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    names.remove(names.size() - 1);
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    names.add(qname(r.getPrefix(), r.getLocalName()));
+                    if (!matches(names)) {
+                        continue;
+                    }
+                    names.remove(names.size() - 1);
+                    Document rec = record(r);
+                    count += 1;
+                    if (workers == null) {
+                        out.write(transform(rec));
+                        continue;
+                    }
+                    pending.add(workers.submit(() -> transform(rec)));
+                    if (pending.size() >= 2 * parallelism) {
+                        out.write(pending.poll().get());
+                    }
+                }
+            }
+            r.close();
+            while (!pending.isEmpty()) {
+                out.write(pending.poll().get());
+            }
+            out.write(end);
+            out.flush();
+            return count;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /** Whether the open elements end at a record */
+    private boolean matches(List<String> names) {
+        int offset = names.size() - path.size();
+        if (offset < 0 || absolute && offset > 0) {
+            return false;
+        }
+        return names.subList(offset, names.size()).equals(path);
+    }
+
+    /**
+     * Transform a record by a pooled transformer. A transformer that failed
+     * may be left in any state, so a new one takes its place in the pool.
+     */
+    private String transform(Document rec) {
+        Transformer t = pool.poll();
+        if (t == null) {
+            t = newTransformer();
+        }
+        StringWriter out = new StringWriter();
+        boolean done = false;
+        try {
+            t.transform(new DOMSource(rec), new StreamResult(out));
+            done = true;
+        } catch (TransformerException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            pool.offer(done ? t : newTransformer());
+        }
+        return out.toString();
+    }
+
+    private Transformer newTransformer() {
+        Transformer t = tr.tr.get();
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        return t;
+    }
+
+    /** Read the current element into a new document */
+    private static Document record(XMLStreamReader r)
+        throws XMLStreamException {
+        Document doc = XmlParser.SHARED.newDocument();
+        Node parent = doc;
+        int depth = 0;
+        do {
+            switch (r.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element e = doc.createElementNS(
+                    uri(r.getNamespaceURI()),
+                    qname(r.getPrefix(), r.getLocalName()));
+                for (int i = 0; i < r.getNamespaceCount(); i++) {
+                    String prefix = r.getNamespacePrefix(i);
+                    e.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        prefix == null || prefix.isEmpty()
+                            ? "xmlns" : "xmlns:" + prefix,
+                        r.getNamespaceURI(i));
+                }
+                for (int i = 0; i < r.getAttributeCount(); i++) {
+                    e.setAttributeNS(uri(r.getAttributeNamespace(i)),
+                        qname(r.getAttributePrefix(i),
+                            r.getAttributeLocalName(i)),
+                        r.getAttributeValue(i));
+                }
+                parent.appendChild(e);
+                parent = e;
+                depth += 1;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                parent = parent.getParentNode();
+                depth -= 1;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                parent.appendChild(doc.createTextNode(r.getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                parent.appendChild(doc.createComment(r.getText()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                parent.appendChild(doc.createProcessingInstruction(
+                    r.getPITarget(), r.getPIData()));
+                break;
+            default:
+                break;
+            }
+        } while (depth > 0 && r.hasNext() && r.next() > 0);
+        return doc;
+    }
+
+    private static String uri(String uri) {
+        return uri == null || uri.isEmpty() ? null : uri;
+    }
+
+    private static String qname(String prefix, String local) {
+        return prefix == null || prefix.isEmpty()
+            ? local : prefix + ":" + local;
+    }
+
+}
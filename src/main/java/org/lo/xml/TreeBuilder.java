@@ -44,6 +44,12 @@ public abstract class TreeBuilder<N> implements Supplier<N>, Iterable<N> {
     /** Return the nodes created from processing the arguments. */
     protected abstract Iterable<N> parseArguments(Iterable<?> args);
 
+    /**
+     * Called when a node is added, before it is linked to its parent; the
+     * parent is null for nodes at the top. Does nothing by default.
+     */
+    protected void adding(N parent, N node) {}
+
     /**
      * Add nodes to be built.
      *
@@ -109,6 +115,15 @@ public abstract class TreeBuilder<N> implements Supplier<N>, Iterable<N> {
         }
     }
 
+    /** Number of nodes held in the depth map, the root included */
+    public int held() {
+        int n = 0;
+        for (LinkedList<N> ls : nodes.values()) {
+            n += ls.size();
+        }
+        return n;
+    }
+
     public N root() {
         return nodes.get(0).peekFirst();
     }
@@ -123,6 +138,9 @@ public abstract class TreeBuilder<N> implements Supplier<N>, Iterable<N> {
 
         // link element to its parent
         N parent = findParent(depth);
+        if (node != null) {
+            adding(parent, node);
+        }
         if (parent != null) {
             addChild(parent, node);
         }
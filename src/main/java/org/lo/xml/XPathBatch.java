@@ -0,0 +1,146 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Evaluate one xpath expression over many context nodes in parallel. The
+ * DOM is not thread-safe even for reading, so the nodes are partitioned by
+ * their documents: the nodes of a document are evaluated in order by one
+ * thread, and different documents by different threads of a fork-join pool.
+ * Expressions are compiled once per thread by {@link XPaths}.
+ *
+ * @author phuc
+ */
+public class XPathBatch {
+
+    /** An expression to evaluate at nodes grouped by document */
+    private static class Job {
+        final String expr;
+        final NamespaceContext ns;
+        final List<? extends Node> nodes;
+        final QName type;
+        final List<int[]> groups;
+        final Object[] results;
+
+        Job(String expr, NamespaceContext ns, List<? extends Node> nodes,
+            QName type) {
+            this.expr = F.checkNotNull(expr);
+            this.ns = ns;
+            this.nodes = nodes;
+            this.type = F.checkNotNull(type);
+            this.groups = partition(nodes);
+            this.results = new Object[nodes.size()];
+        }
+    }
+
+    /** Evaluate the groups in a range, splitting it among threads */
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Job job;
+        final int from, to;
+
+        Batch(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(job, from, mid), new Batch(job, mid, to));
+            } else if (to > from) {
+                for (int i : job.groups.get(from)) {
+                    job.results[i] = xpaths.eval(job.expr, job.ns,
+                        job.nodes.get(i), job.type);
+                }
+            }
+        }
+    }
+
+    private final XPaths xpaths;
+
+    private final ForkJoinPool pool;
+
+    /** Batch on the common pool with the expressions cached by F.eval */
+    public XPathBatch() {
+        this(XPaths.SHARED, ForkJoinPool.commonPool());
+    }
+
+    public XPathBatch(XPaths xpaths, ForkJoinPool pool) {
+        this.xpaths = F.checkNotNull(xpaths);
+        this.pool = F.checkNotNull(pool);
+    }
+
+    public List<String> strings(String expr, List<? extends Node> nodes) {
+        return eval(expr, nodes, XPathConstants.STRING);
+    }
+
+    public List<Double> numbers(String expr, List<? extends Node> nodes) {
+        return eval(expr, nodes, XPathConstants.NUMBER);
+    }
+
+    public List<Boolean> booleans(String expr, List<? extends Node> nodes) {
+        return eval(expr, nodes, XPathConstants.BOOLEAN);
+    }
+
+    public List<NodeList> nodeLists(String expr,
+        List<? extends Node> nodes) {
+        return eval(expr, nodes, XPathConstants.NODESET);
+    }
+
+    public <T> List<T> eval(String expr, List<? extends Node> nodes,
+        QName type) {
+        return eval(expr, null, nodes, type);
+    }
+
+    /**
+     * Evaluate an expression at each node, returning the results in the
+     * order of the nodes. The type is one of {@link XPathConstants} and
+     * determines the type of the results.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> eval(String expr, NamespaceContext ns,
+        List<? extends Node> nodes, QName type) {
+        Job job = new Job(expr, ns, nodes, type);
+        pool.invoke(new Batch(job, 0, job.groups.size()));
+        return (List<T>) Arrays.asList(job.results);
+    }
+
+    /** Indexes of the nodes grouped by document, in order of first use */
+    private static List<int[]> partition(List<? extends Node> nodes) {
+        Map<Node, List<Integer>> byDoc = new IdentityHashMap<>();
+        List<List<Integer>> order = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = F.checkNotNull(nodes.get(i));
+            Node doc = n instanceof Document ? n : n.getOwnerDocument();
+            byDoc.computeIfAbsent(doc, d -> {
+                List<Integer> group = new ArrayList<>();
+                order.add(group);
+                return group;
+            }).add(i);
+        }
+        List<int[]> groups = new ArrayList<>(order.size());
+        for (List<Integer> g : order) {
+            groups.add(g.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return groups;
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.lo.xml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Evaluate xpath expressions, compiling each expression once. Neither XPath
+ * nor XPathExpression is thread-safe, so each thread has its own XPath and
+ * its own cache of compiled expressions, keyed by expression text and
+ * namespace context. The least recently used expressions of a thread are
+ * dropped beyond the max size. Hits and misses are counted over all threads.
+ *
+ * @author phuc
+ */
+public class XPaths {
+
+    /** Cache of {@link F#eval(String, Node, QName)}, not exposed to callers */
+    static final XPaths SHARED = new XPaths(256);
+
+    /** Expression text and the namespace context it is compiled with */
+    private static class Key {
+        final String expr;
+        final NamespaceContext ns;
+
+        Key(String expr, NamespaceContext ns) {
+            this.expr = expr;
+            this.ns = ns;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return expr.equals(k.expr) && ns == k.ns;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(expr, System.identityHashCode(ns));
+        }
+    }
+
+    private final int maxSize;
+
+    private final ThreadLocal<XPath> xpath = ThreadLocal
+        .withInitial(() -> XPathFactory.newInstance().newXPath());
+
+    private final ThreadLocal<Map<Key, XPathExpression>> compiled;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Cache of at most the given number of expressions per thread */
+    public XPaths(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        this.maxSize = maxSize;
+        this.compiled = ThreadLocal.withInitial(() ->
+            new LinkedHashMap<Key, XPathExpression>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<Key, XPathExpression> e) {
+                    boolean full = size() > XPaths.this.maxSize;
+                    if (full) {
+                        evictions.incrementAndGet();
+                    }
+                    return full;
+                }
+            });
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d evictions=%d", hits(),
+            misses(), evictions());
+    }
+
+    public Object eval(String expr, Node node, QName type) {
+        return eval(expr, null, node, type);
+    }
+
+    /** Evaluate an expression having prefixes bound by a namespace context */
+    public Object eval(String expr, NamespaceContext ns, Node node,
+        QName type) {
+        try {
+            return compile(expr, ns).evaluate(node, type);
+        } catch (XPathExpressionException e) {
+            String msg = "Failed to eval %s in %s";
+            msg = String.format(msg, expr, node);
+            throw new IllegalArgumentException(msg, e);
+        }
+    }
+
+    public String string(String expr, Node node) {
+        return (String) eval(expr, node, XPathConstants.STRING);
+    }
+
+    public NodeList nodes(String expr, Node node) {
+        return (NodeList) eval(expr, node, XPathConstants.NODESET);
+    }
+
+    /**
+     * Compiled expression for the current thread; it must not be shared with
+     * other threads.
+     */
+    public XPathExpression compile(String expr, NamespaceContext ns) {
+        Key key = new Key(F.checkNotNull(expr), ns);
+        Map<Key, XPathExpression> cache = compiled.get();
+        XPathExpression xe = cache.get(key);
+        if (xe != null) {
+            hits.incrementAndGet();
+            return xe;
+        }
+        misses.incrementAndGet();
+        XPath xp = xpath.get();
+        xp.reset();
+        if (ns != null) {
+            xp.setNamespaceContext(ns);
+        }
+        try {
+            xe = xp.compile(expr);
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Invalid xpath " + expr, e);
+        }
+        cache.put(key, xe);
+        return xe;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Ratio of hits over all lookups, 0 if there is no lookup */
+    public double hitRate() {
+        long h = hits(), all = h + misses();
+        return all == 0 ? 0 : (double) h / all;
+    }
+
+}
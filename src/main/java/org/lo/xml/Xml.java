@@ -36,6 +36,9 @@ public abstract class Xml implements Supplier<Node> {
     /** Require an owner document to create nodes */
     public final Document owner;
 
+    /** Indexes updated as nodes are added */
+    private final List<XmlIndex> indexes = new ArrayList<>(1);
+
     /**
      * Parse arguments to nodes and add nodes to their parents. If child is
      * attribute, it is added to parent as attribute node.
@@ -50,6 +53,13 @@ public abstract class Xml implements Supplier<Node> {
             }
         }
 
+        @Override
+        protected void adding(Node parent, Node child) {
+            for (XmlIndex index : indexes) {
+                index.adding(parent, child);
+            }
+        }
+
         @Override
         protected Collection<Node> parseArguments(Iterable<?> args) {
             List<Node> nodes = new ArrayList<>();
@@ -189,6 +199,31 @@ public abstract class Xml implements Supplier<Node> {
         return builder.children();
     }
 
+    /**
+     * Index the nodes built so far and keep the index updated as nodes are
+     * added. Return the given index.
+     */
+    public XmlIndex index(XmlIndex index) {
+        children().forEach(index::addAll);
+        indexes.add(index);
+        return index;
+    }
+
+    /** Index elements by the value of an attribute */
+    public XmlIndex index(String attribute) {
+        return index(XmlIndex.attribute(attribute));
+    }
+
+    /** Counts and estimated size of the nodes being built */
+    public XmlStats stats() {
+        return stats(new XmlStats());
+    }
+
+    XmlStats stats(XmlStats stats) {
+        children().forEach(stats::add);
+        return stats.held(builder.held());
+    }
+
     public <T extends Node> T get(Class<T> type) {
         return type.cast(get());
     }
@@ -0,0 +1,156 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Hash index of elements by the value of an attribute or by their name,
+ * built in one pass over a tree. An index given to {@link Xml#index} is also
+ * updated as nodes are added to the builder.
+ * <p>
+ * A key maps to its element, or to a list only when several elements share
+ * it. Elements whose attribute changed after they were indexed are left out
+ * of lookups under their old key.
+ *
+ * @author phuc
+ */
+public class XmlIndex {
+
+    /** Attribute giving the keys, null to key elements by name */
+    private final String attribute;
+
+    /** Key to an element or a list of elements */
+    private final Map<String, Object> entries = new HashMap<>();
+
+    private XmlIndex(String attribute) {
+        this.attribute = attribute;
+    }
+
+    /** Index of elements by the value of an attribute */
+    public static XmlIndex attribute(String name) {
+        return new XmlIndex(F.checkNotNull(name));
+    }
+
+    /** Index of elements by id attribute */
+    public static XmlIndex ids() {
+        return attribute("id");
+    }
+
+    /** Index of elements by their qualified name */
+    public static XmlIndex names() {
+        return new XmlIndex(null);
+    }
+
+    /** Index the elements of a tree, including the given node */
+    public XmlIndex addAll(Node tree) {
+        Node n = tree;
+        while (n != null) {
+            if (n instanceof Element) {
+                add((Element) n);
+            }
+            Node next = n.getFirstChild();
+            while (next == null && n != tree) {
+                next = n.getNextSibling();
+                n = n.getParentNode();
+            }
+            n = next;
+        }
+        return this;
+    }
+
+    /** Index a node about to be added to a parent */
+    void adding(Node parent, Node node) {
+        if (node instanceof Attr) {
+            if (parent instanceof Element && attribute != null
+                && attribute.equals(((Attr) node).getName())) {
+                put(((Attr) node).getValue(), (Element) parent);
+            }
+        } else {
+            addAll(node);
+        }
+    }
+
+    /** First element indexed under a key, null if none */
+    public Element get(String key) {
+        Object entry = entries.get(key);
+        if (entry instanceof Element) {
+            return matches((Element) entry, key) ? (Element) entry : null;
+        } else if (entry != null) {
+            for (Object e : (List<?>) entry) {
+                if (matches((Element) e, key)) {
+                    return (Element) e;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Elements indexed under a key, in the order they were indexed */
+    public List<Element> getAll(String key) {
+        Object entry = entries.get(key);
+        if (entry == null) {
+            return Collections.emptyList();
+        } else if (entry instanceof Element) {
+            return matches((Element) entry, key)
+                ? Collections.singletonList((Element) entry)
+                : Collections.emptyList();
+        }
+        List<Element> found = new ArrayList<>();
+        for (Object e : (List<?>) entry) {
+            if (matches((Element) e, key)) {
+                found.add((Element) e);
+            }
+        }
+        return found;
+    }
+
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    /** Number of keys */
+    public int size() {
+        return entries.size();
+    }
+
+    private void add(Element e) {
+        if (attribute == null) {
+            put(e.getTagName(), e);
+        } else if (e.hasAttribute(attribute)) {
+            put(e.getAttribute(attribute), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void put(String key, Element e) {
+        Object entry = entries.putIfAbsent(key, e);
+        if (entry == null || entry == e) {
+            return;
+        } else if (entry instanceof Element) {
+            List<Element> ls = new ArrayList<>(2);
+            ls.add((Element) entry);
+            ls.add(e);
+            entries.put(key, ls);
+        } else {
+            List<Element> ls = (List<Element>) entry;
+            for (Element other : ls) {
+                if (other == e) {
+                    return;
+                }
+            }
+            ls.add(e);
+        }
+    }
+
+    private boolean matches(Element e, String key) {
+        return attribute == null || key.equals(e.getAttribute(attribute));
+    }
+
+}
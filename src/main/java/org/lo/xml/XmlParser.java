@@ -0,0 +1,226 @@
+package org.lo.xml;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parse xml into DOM with a factory configured once and a DocumentBuilder per
+ * thread, which is reset and reused for every parse. The default parser is
+ * namespace-aware, applies the secure-processing limits on entity expansion
+ * and defers node expansion. Options take effect on the next parse.
+ *
+ * @author phuc
+ */
+public class XmlParser {
+
+    /** Deferred node expansion of the JDK parser */
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    private static final String DISALLOW_DOCTYPE =
+        "http://apache.org/xml/features/disallow-doctype-decl";
+
+    /** Fail on fatal errors without printing them */
+    private static final ErrorHandler ERRORS = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException e) {}
+
+        @Override
+        public void error(SAXParseException e) {}
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    };
+
+    /** Parser of the F.parse methods, not exposed to callers */
+    static final XmlParser SHARED = new XmlParser();
+
+    /** A builder of a thread and the factory it is made by */
+    private static class Builder {
+        final DocumentBuilderFactory factory;
+        final DocumentBuilder builder;
+
+        Builder(DocumentBuilderFactory factory, DocumentBuilder builder) {
+            this.factory = factory;
+            this.builder = builder;
+        }
+    }
+
+    /** Read the remaining bytes of a buffer */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+    private boolean namespaceAware = true;
+
+    private boolean secure = true;
+
+    private boolean deferred = true;
+
+    private boolean doctype = true;
+
+    /** Factory of the current options, made on first use */
+    private volatile DocumentBuilderFactory factory;
+
+    private final ThreadLocal<Builder> builders = new ThreadLocal<>();
+
+    public XmlParser namespaceAware(boolean aware) {
+        this.namespaceAware = aware;
+        this.factory = null;
+        return this;
+    }
+
+    /** Whether to limit entity expansion and other resources */
+    public XmlParser secure(boolean secure) {
+        this.secure = secure;
+        this.factory = null;
+        return this;
+    }
+
+    /**
+     * Whether to build nodes only when they are visited; faster when only
+     * parts of large documents are read.
+     */
+    public XmlParser deferred(boolean deferred) {
+        this.deferred = deferred;
+        this.factory = null;
+        return this;
+    }
+
+    /** Whether to accept DOCTYPE declarations */
+    public XmlParser doctype(boolean allow) {
+        this.doctype = allow;
+        this.factory = null;
+        return this;
+    }
+
+    /** New empty document, made by the builder of the current thread */
+    public Document newDocument() {
+        return builder().newDocument();
+    }
+
+    public Document parse(String xml) {
+        return parse(new InputSource(new StringReader(xml)));
+    }
+
+    public Document parse(Reader xml) {
+        return parse(new InputSource(xml));
+    }
+
+    public Document parse(InputStream xml) {
+        return parse(new InputSource(xml));
+    }
+
+    /** Parse a file, resolving its relative references against it */
+    public Document parse(Path xml) {
+        try (InputStream in = new BufferedInputStream(
+            Files.newInputStream(xml))) {
+            InputSource src = new InputSource(in);
+            src.setSystemId(xml.toUri().toString());
+            return parse(src);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Parse the remaining bytes of a buffer without changing its position */
+    public Document parse(ByteBuffer xml) {
+        return parse(new InputSource(new BufferInputStream(xml.duplicate())));
+    }
+
+    public Document parse(InputSource xml) {
+        DocumentBuilder builder = builder();
+        try {
+            return builder.parse(xml);
+        } catch (SAXException e) {
+            throw new IllegalArgumentException("Failed to parse "
+                + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            builder.reset();
+            builder.setErrorHandler(ERRORS);
+        }
+    }
+
+    private DocumentBuilder builder() {
+        DocumentBuilderFactory f = factory();
+        Builder b = builders.get();
+        if (b == null || b.factory != f) {
+            try {
+                b = new Builder(f, f.newDocumentBuilder());
+            } catch (ParserConfigurationException e) {
+                throw new IllegalArgumentException(e);
+            }
+            b.builder.setErrorHandler(ERRORS);
+            builders.set(b);
+        }
+        return b.builder;
+    }
+
+    private DocumentBuilderFactory factory() {
+        DocumentBuilderFactory f = factory;
+        if (f == null) {
+            f = DocumentBuilderFactory.newInstance();
+            f.setNamespaceAware(namespaceAware);
+            try {
+                f.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, secure);
+                f.setFeature(DISALLOW_DOCTYPE, !doctype);
+            } catch (ParserConfigurationException e) {
+                throw new IllegalArgumentException(e);
+            }
+            try {
+                f.setFeature(DEFER_NODE_EXPANSION, deferred);
+            } catch (ParserConfigurationException e) {
+                // the parser has no deferred mode
+            }
+            factory = f;
+        }
+        return f;
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.lo.xml;
+
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * Counts and estimated heap size of trees, such as those being built by
+ * {@link Xml#stats()} and {@link Xsl#stats()}. Collecting walks the trees
+ * once without allocating, so it can be done on live builders.
+ * <p>
+ * The retained size is an estimate for a 64-bit JVM with compressed
+ * references: a fixed size per node and per string of character data, the
+ * chars themselves and the entries of the builders. Names are not counted
+ * since DOM implementations share them.
+ *
+ * @author phuc
+ */
+public class XmlStats {
+
+    /** Estimated bytes of a DOM node */
+    static final int NODE_BYTES = 56;
+
+    /** Estimated bytes of a string and its array, without the chars */
+    static final int STRING_BYTES = 40;
+
+    /** Estimated bytes of a builder entry */
+    static final int ENTRY_BYTES = 24;
+
+    /** Node counts indexed by node type */
+    private final long[] counts = new long[13];
+
+    private long chars, strings, held;
+
+    private int maxDepth;
+
+    /** Stats of the tree of a node */
+    public static XmlStats of(Node tree) {
+        return new XmlStats().add(tree);
+    }
+
+    /** Add the nodes of a tree, the given node being at depth 1 */
+    XmlStats add(Node tree) {
+        Node n = tree;
+        int depth = 1;
+        while (n != null) {
+            count(n, depth);
+            Node next = n.getFirstChild();
+            if (next != null) {
+                depth += 1;
+            }
+            while (next == null && n != tree) {
+                next = n.getNextSibling();
+                if (next == null) {
+                    n = n.getParentNode();
+                    depth -= 1;
+                }
+            }
+            n = next;
+        }
+        return this;
+    }
+
+    /** Add the number of nodes held by a builder */
+    XmlStats held(int nodes) {
+        held += nodes;
+        return this;
+    }
+
+    private void count(Node n, int depth) {
+        counts[n.getNodeType()] += 1;
+        maxDepth = Math.max(maxDepth, depth);
+        if (n instanceof CharacterData) {
+            text(((CharacterData) n).getLength());
+        } else if (n instanceof ProcessingInstruction) {
+            text(((ProcessingInstruction) n).getData().length());
+        }
+        NamedNodeMap attrs = n.getAttributes();
+        if (attrs != null && n.getNodeType() == Node.ELEMENT_NODE) {
+            for (int i = 0; i < attrs.getLength(); i++) {
+                counts[Node.ATTRIBUTE_NODE] += 1;
+                text(attrs.item(i).getNodeValue().length());
+            }
+        }
+    }
+
+    private void text(int length) {
+        strings += 1;
+        chars += length;
+    }
+
+    /** Number of nodes of a type, as in {@link Node#getNodeType()} */
+    public long count(short nodeType) {
+        return counts[nodeType];
+    }
+
+    /** Number of nodes of all types, attributes included */
+    public long nodes() {
+        long n = 0;
+        for (long c : counts) {
+            n += c;
+        }
+        return n;
+    }
+
+    public long elements() {
+        return counts[Node.ELEMENT_NODE];
+    }
+
+    public long attributes() {
+        return counts[Node.ATTRIBUTE_NODE];
+    }
+
+    /** Number of text and CDATA nodes */
+    public long texts() {
+        return counts[Node.TEXT_NODE] + counts[Node.CDATA_SECTION_NODE];
+    }
+
+    public long comments() {
+        return counts[Node.COMMENT_NODE];
+    }
+
+    /** Depth of the deepest node, top nodes being at depth 1 */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /** Length of the character data: texts, comments, values of attributes */
+    public long chars() {
+        return chars;
+    }
+
+    /** Number of nodes held by the depth maps of builders */
+    public long held() {
+        return held;
+    }
+
+    /** Estimated bytes retained by the nodes and the builders */
+    public long retained() {
+        return nodes() * NODE_BYTES + strings * STRING_BYTES + chars * 2
+            + held * ENTRY_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "nodes=%d elements=%d attributes=%d texts=%d maxDepth=%d"
+                + " chars=%d held=%d retained=%d",
+            nodes(), elements(), attributes(), texts(), maxDepth, chars,
+            held, retained());
+    }
+
+}
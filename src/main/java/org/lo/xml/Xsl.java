@@ -69,6 +69,16 @@ public abstract class Xsl implements Supplier<Node> {
         return get();
     }
 
+    /**
+     * Counts and estimated size of the nodes being built, including those of
+     * nested builders.
+     */
+    public XmlStats stats() {
+        XmlStats stats = new XmlStats();
+        builders.forEach(b -> b.stats(stats));
+        return stats;
+    }
+
     /** Import the xsl being built into a new document */
     public Document export() {
         return builder().export();
@@ -403,6 +413,18 @@ public abstract class Xsl implements Supplier<Node> {
         return e(xsl("number"), attrs);
     }
 
+    /**
+     * Output the number precomputed by {@link Numbering} for the current
+     * node, in place of xsl:number.
+     */
+    public Element xsNumbered(String attr) {
+        return xsValueOf("@" + attr);
+    }
+
+    public Element xsNumbered(Numbering numbering) {
+        return xsNumbered(numbering.attr());
+    }
+
     /**
      * Defines the characters and symbols to be used when converting numbers
      * into strings, with the format-number() function.
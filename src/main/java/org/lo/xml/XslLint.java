@@ -0,0 +1,257 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Report expensive patterns in xslt, such as the DOM built by {@link Xsl}.
+ * Each finding has an estimated cost over the size of the input and an
+ * advice for rewriting. Call {@link #verify(Node)} in a test to keep quadratic
+ * stylesheets out of a build.
+ *
+ * @author phuc
+ */
+public class XslLint {
+
+    /** Estimated cost of a pattern over the size of the input */
+    public enum Cost {
+        LINEAR, QUADRATIC
+    }
+
+    /** An expensive pattern found in a stylesheet */
+    public static class Finding {
+
+        /** Element having the expression */
+        public final Element element;
+
+        /** Attribute having the expression */
+        public final String attribute;
+
+        public final String expression;
+
+        public final String rule;
+
+        public final Cost cost;
+
+        public final String advice;
+
+        Finding(
+            Element element,
+            String attribute,
+            String rule,
+            Cost cost,
+            String advice) {
+            this.element = element;
+            this.attribute = attribute;
+            this.expression = element.getAttribute(attribute);
+            this.rule = rule;
+            this.cost = cost;
+            this.advice = advice;
+        }
+
+        /** Path of the element from its template */
+        public String path() {
+            List<String> steps = new ArrayList<>();
+            for (Node n = element; n instanceof Element; n = n
+                .getParentNode()) {
+                Element e = (Element) n;
+                String step = e.getTagName();
+                if (F.isXsl(e, "template")) {
+                    String match = e.getAttribute("match");
+                    String name = e.getAttribute("name");
+                    steps.add(0, step + "[" + (match.isEmpty() ? name : match)
+                        + "]");
+                    break;
+                }
+                steps.add(0, step);
+            }
+            return String.join("/", steps);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s at %s/@%s=\"%s\": %s", cost, rule,
+                path(), attribute, expression, advice);
+        }
+    }
+
+    /** Attributes having expressions */
+    private static final String[] EXPRESSIONS = { "select", "test", "value" };
+
+    /** Attributes having patterns, tested against each node processed */
+    private static final String[] PATTERNS = { "match" };
+
+    private static final Pattern DESCENDANT = Pattern.compile("//");
+
+    private static final Pattern MUENCHIAN = Pattern.compile(
+        "generate-id\\s*\\(\\s*key\\s*\\("
+            + "|count\\s*\\(\\s*\\.\\s*\\|\\s*key\\s*\\(");
+
+    private static final Pattern PRECEDING = Pattern.compile(
+        "count\\s*\\(\\s*preceding(-sibling)?::");
+
+    private XslLint() {}
+
+    public static List<Finding> check(Supplier<Node> xsl) {
+        return check(xsl.get());
+    }
+
+    /** Find expensive patterns in a stylesheet */
+    public static List<Finding> check(Node xsl) {
+        List<Finding> findings = new ArrayList<>();
+        for (Element e : F.elements(F.root(xsl))) {
+            check(e, false, findings);
+        }
+        return findings;
+    }
+
+    /**
+     * Throw IllegalArgumentException if the stylesheet has quadratic
+     * patterns.
+     */
+    public static void verify(Node xsl) {
+        List<Finding> bad = check(xsl).stream()
+            .filter(f -> f.cost == Cost.QUADRATIC)
+            .collect(Collectors.toList());
+        if (!bad.isEmpty()) {
+            throw new IllegalArgumentException("Found quadratic patterns:"
+                + bad.stream().map(f -> "\n  " + f)
+                    .collect(Collectors.joining()));
+        }
+    }
+
+    public static void verify(Supplier<Node> xsl) {
+        verify(xsl.get());
+    }
+
+    /**
+     * Check an element and its descendants.
+     *
+     * @param repeated = whether the element is evaluated once per input node
+     */
+    private static void check(
+        Element e,
+        boolean repeated,
+        List<Finding> findings) {
+        String name = F.xslName(e);
+        if ("key".equals(name)) {
+            return;
+        }
+        for (String attr : EXPRESSIONS) {
+            if (e.hasAttribute(attr)) {
+                String expr = blankLiterals(e.getAttribute(attr));
+                check(e, attr, expr, repeated, false, findings);
+            }
+        }
+        for (String attr : PATTERNS) {
+            if (e.hasAttribute(attr)) {
+                String expr = blankLiterals(e.getAttribute(attr));
+                check(e, attr, expr, true, true, findings);
+            }
+        }
+        if ("number".equals(name)) {
+            String level = e.getAttribute("level");
+            if ("any".equals(level) || "multiple".equals(level)) {
+                findings.add(new Finding(e, "level", "number-" + level,
+                    repeated ? Cost.QUADRATIC : Cost.LINEAR,
+                    "count with position() while iterating, or precompute the"
+                        + " numbers before transforming"));
+            }
+        }
+        boolean inner = repeated || "for-each".equals(name)
+            || "template".equals(name) && !"/".equals(e.getAttribute("match"));
+        for (Element child : F.elements(e)) {
+            check(child, inner, findings);
+        }
+    }
+
+    /**
+     * Check an expression or a pattern. Predicates are evaluated once per
+     * candidate node, so what they contain costs as if repeated. Only the
+     * predicates of a pattern are checked, its steps being tested against
+     * the ancestors of a node rather than scanned.
+     */
+    private static void check(
+        Element e,
+        String attr,
+        String expr,
+        boolean repeated,
+        boolean pattern,
+        List<Finding> findings) {
+        Cost cost = cost(DESCENDANT, expr, repeated, pattern);
+        if (cost != null) {
+            findings.add(new Finding(e, attr, "descendant-scan", cost,
+                "look up nodes with xsl:key and key(), or use a relative"
+                    + " path"));
+        }
+        cost = cost(MUENCHIAN, expr, repeated, pattern);
+        if (cost != null) {
+            findings.add(new Finding(e, attr, "muenchian-grouping", cost,
+                "select the candidates with a narrow path instead of all"
+                    + " nodes, or group once outside of loops"));
+        }
+        cost = cost(PRECEDING, expr, repeated, pattern);
+        if (cost != null) {
+            findings.add(new Finding(e, attr, "preceding-count", cost,
+                "use position() while iterating, or xsl:number"));
+        }
+    }
+
+    /** Highest cost of the occurrences of a rule, null if none */
+    private static Cost cost(
+        Pattern rule,
+        String expr,
+        boolean repeated,
+        boolean pattern) {
+        Cost cost = null;
+        Matcher m = rule.matcher(expr);
+        while (m.find()) {
+            boolean inPredicate = inPredicate(expr, m.start());
+            if (inPredicate || repeated && !pattern) {
+                return Cost.QUADRATIC;
+            } else if (!pattern) {
+                cost = Cost.LINEAR;
+            }
+        }
+        return cost;
+    }
+
+    /** Whether a position of an expression is inside a predicate */
+    private static boolean inPredicate(String expr, int at) {
+        int depth = 0;
+        for (int i = 0; i < at; i++) {
+            char c = expr.charAt(i);
+            if (c == '[') {
+                depth += 1;
+            } else if (c == ']') {
+                depth -= 1;
+            }
+        }
+        return depth > 0;
+    }
+
+    /** Replace string literals of an expression with spaces */
+    static String blankLiterals(String expr) {
+        StringBuilder sb = new StringBuilder(expr);
+        char quote = 0;
+        for (int i = 0; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (quote != 0) {
+                sb.setCharAt(i, ' ');
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,180 @@
+package org.lo.xml;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.dom.DOMSource;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Registry of xslt modules kept in memory, serving xsl:import, xsl:include
+ * and document() as a URIResolver. Each module is parsed once when it is put,
+ * with all its nodes built up front so that concurrent compiles and
+ * transformations can read it.
+ * Compiled Templates are cached with the modules they depend on; putting or
+ * removing a module drops only the Templates that depend on it.
+ *
+ * @author phuc
+ */
+public class XslModules implements URIResolver {
+
+    /** Parser of shared modules, not deferring node expansion */
+    private static final XmlParser PARSER = new XmlParser().secure(false)
+        .deferred(false);
+
+    /** Resolver for hrefs that are not in the registry; may be null */
+    private final URIResolver fallback;
+
+    private final Map<String, Document> modules = new HashMap<>();
+
+    private final Map<String, Templates> compiled = new HashMap<>();
+
+    /** Modules resolved while compiling each cached Templates */
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+
+    public XslModules() {
+        this(null);
+    }
+
+    public XslModules(URIResolver fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new TreeSet<>(modules.keySet()).toString();
+    }
+
+    public XslModules put(String href, Supplier<Node> xsl) {
+        return put(href, xsl.get());
+    }
+
+    public XslModules put(String href, Node xsl) {
+        return put(href, F.toString(xsl));
+    }
+
+    /** Add or replace a module, dropping the Templates depending on it */
+    public XslModules put(String href, String xsl) {
+        Document doc = parse(xsl, href);
+        synchronized (this) {
+            modules.put(href, doc);
+            invalidate(href);
+        }
+        return this;
+    }
+
+    public synchronized XslModules remove(String href) {
+        if (modules.remove(href) != null) {
+            invalidate(href);
+        }
+        return this;
+    }
+
+    public synchronized boolean contains(String href) {
+        return modules.containsKey(href);
+    }
+
+    public synchronized Set<String> hrefs() {
+        return new TreeSet<>(modules.keySet());
+    }
+
+    /** Compiled stylesheet of a module, cached until a dependency changes */
+    public synchronized Templates templates(String href) {
+        Templates tp = compiled.get(href);
+        if (tp == null) {
+            Source xsl = F.checkNotNull(resolve(href));
+            Set<String> deps = new LinkedHashSet<>();
+            TransformerFactory tf = TransformerFactory.newInstance();
+            tf.setURIResolver((h, base) -> {
+                Source s = resolve(h, base);
+                if (s != null && s.getSystemId() != null) {
+                    deps.add(s.getSystemId());
+                }
+                return s;
+            });
+            tp = F.newTemplates(tf, xsl);
+            compiled.put(href, tp);
+            dependencies.put(href, deps);
+        }
+        return tp;
+    }
+
+    /** Transformation of a module, resolving document() by this registry */
+    public Tr tr(String href) {
+        Templates tp = templates(href);
+        return new Tr(() -> {
+            Transformer tr = F.newTransformer(tp);
+            tr.setURIResolver(this);
+            return tr;
+        });
+    }
+
+    /** Modules imported or included when the module was last compiled */
+    public synchronized Set<String> dependencies(String href) {
+        Set<String> deps = dependencies.get(href);
+        return deps == null ? new TreeSet<>() : new TreeSet<>(deps);
+    }
+
+    public synchronized boolean isCompiled(String href) {
+        return compiled.containsKey(href);
+    }
+
+    /** Source of a module in the registry, or null */
+    public synchronized Source resolve(String href) {
+        Document doc = modules.get(href);
+        return doc == null ? null : new DOMSource(doc, href);
+    }
+
+    /**
+     * Resolve an href as given, then relative to the base, then by the
+     * fallback resolver.
+     */
+    @Override
+    public Source resolve(String href, String base)
+        throws TransformerException {
+        Source s = resolve(href);
+        if (s == null && base != null && !base.isEmpty()) {
+            try {
+                s = resolve(URI.create(base).resolve(href).toString());
+            } catch (IllegalArgumentException e) {
+                s = null;
+            }
+        }
+        if (s == null && fallback != null) {
+            s = fallback.resolve(href, base);
+        }
+        return s;
+    }
+
+    private void invalidate(String href) {
+        compiled.keySet().removeIf(k -> k.equals(href)
+            || dependencies.get(k).contains(href));
+        dependencies.keySet().retainAll(compiled.keySet());
+    }
+
+    private static Document parse(String xsl, String href) {
+        InputSource in = new InputSource(new StringReader(xsl));
+        in.setSystemId(href);
+        try {
+            return PARSER.parse(in);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Failed to parse " + href, e);
+        }
+    }
+
+}
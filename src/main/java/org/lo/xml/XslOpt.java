@@ -0,0 +1,570 @@
+package org.lo.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Rewrite xslt before compiling it, keeping its output the same:
+ * <ul>
+ * <li>inline calls of small named templates that have no parameters</li>
+ * <li>hoist loop-invariant xsl:variable out of xsl:for-each</li>
+ * <li>replace repeated lookups like //name[@attr=value] with xsl:key</li>
+ * </ul>
+ * Rewrites are conservative: expressions that cannot be proved safe are left
+ * alone. The given stylesheet is not changed; the result is a new document.
+ *
+ * @author phuc
+ */
+public class XslOpt {
+
+    private static final String NAME =
+        "[A-Za-z_][\\w.-]*(?::[A-Za-z_][\\w.-]*)?";
+
+    /** Lookup of elements by an attribute, from the root */
+    private static final Pattern LOOKUP = Pattern.compile("//(" + NAME
+        + ")\\[\\s*@(" + NAME + ")\\s*=\\s*('[^']*'|\"[^\"]*\"|current\\(\\)"
+        + "(?:/@?" + NAME + ")*)\\s*\\]");
+
+    /** Reference to a variable or param */
+    private static final Pattern REFERENCE = Pattern.compile("\\$(" + NAME
+        + ")");
+
+    /** Call of a function, not part of a longer name */
+    private static final Pattern CALL = Pattern.compile("(?<![\\w.:-])("
+        + NAME + ")\\s*\\(");
+
+    /** Functions that depend on the context node or context position */
+    private static final Set<String> CONTEXT_FUNCTIONS = new HashSet<>(
+        Arrays.asList("position", "last", "current", "lang"));
+
+    /** Functions that use the context node when called without arguments */
+    private static final Set<String> CONTEXT_DEFAULTS = new HashSet<>(
+        Arrays.asList("name", "local-name", "namespace-uri", "string",
+            "number", "normalize-space", "string-length", "generate-id"));
+
+    private static final Set<String> OPERATORS = new HashSet<>(
+        Arrays.asList("and", "or", "div", "mod"));
+
+    private static final String[] EXPRESSIONS = { "select", "test", "value" };
+
+    private boolean inline = true;
+
+    private boolean hoist = true;
+
+    private boolean keys = true;
+
+    /** Max number of elements of a template to be inlined */
+    private int inlineSize = 8;
+
+    /** Optimize with all rewrites */
+    public static Document optimize(Node xsl) {
+        return new XslOpt().apply(xsl);
+    }
+
+    public static Document optimize(Supplier<Node> xsl) {
+        return optimize(xsl.get());
+    }
+
+    public XslOpt inline(boolean inline) {
+        this.inline = inline;
+        return this;
+    }
+
+    /** Inline named templates having at most the given number of elements */
+    public XslOpt inlineSize(int size) {
+        this.inlineSize = size;
+        return this;
+    }
+
+    public XslOpt hoist(boolean hoist) {
+        this.hoist = hoist;
+        return this;
+    }
+
+    public XslOpt keys(boolean keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    /** Return an optimized copy of the stylesheet */
+    public Document apply(Node xsl) {
+        Document doc = F.newDocument();
+        Element root = (Element) doc.importNode(F.root(xsl), true);
+        doc.appendChild(root);
+        if (inline) {
+            inlineTemplates(root);
+        }
+        if (hoist) {
+            hoistVariables(root);
+        }
+        if (keys) {
+            addKeys(root);
+        }
+        return doc;
+    }
+
+    public Document apply(Supplier<Node> xsl) {
+        return apply(xsl.get());
+    }
+
+    private void inlineTemplates(Element root) {
+        Map<String, Element> named = new HashMap<>();
+        Set<String> duplicates = new HashSet<>();
+        for (Element t : F.elements(root)) {
+            if (F.isXsl(t, "template") && t.hasAttribute("name")) {
+                if (named.put(t.getAttribute("name"), t) != null) {
+                    duplicates.add(t.getAttribute("name"));
+                }
+            }
+        }
+        named.keySet().removeAll(duplicates);
+        named.values().removeIf(t -> !inlinable(t));
+        for (Element call : descendants(root)) {
+            Element t = named.get(call.getAttribute("name"));
+            if (t == null || !F.isXsl(call, "call-template")
+                || !F.elements(call).isEmpty() || contains(t, call)
+                || shadowed(references(t), call)) {
+                continue;
+            }
+            Node parent = call.getParentNode();
+            for (Node c = t.getFirstChild(); c != null; c = c
+                .getNextSibling()) {
+                parent.insertBefore(c.cloneNode(true), call);
+            }
+            parent.removeChild(call);
+        }
+    }
+
+    /** Small template with no bindings and no calls */
+    private boolean inlinable(Element template) {
+        List<Element> body = descendants(template);
+        return body.size() <= inlineSize && body.stream()
+            .map(F::xslName)
+            .noneMatch(n -> "param".equals(n) || "variable".equals(n)
+                || "call-template".equals(n));
+    }
+
+    /** Names of the variables referenced in the attributes of an element */
+    private static Set<String> references(Element e) {
+        Set<String> names = new HashSet<>();
+        for (Element d : descendants(e)) {
+            NamedNodeMap attrs = d.getAttributes();
+            for (int i = 0; i < attrs.getLength(); i++) {
+                Matcher m = REFERENCE.matcher(attrs.item(i).getNodeValue());
+                while (m.find()) {
+                    names.add(m.group(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Whether a binding of one of the names is in scope at the element,
+     * other than a top-level one: any binding of the names in the enclosing
+     * top-level element is taken as in scope.
+     */
+    private static boolean shadowed(Set<String> names, Element e) {
+        Element top = e;
+        while (top.getParentNode() instanceof Element
+            && top.getParentNode().getParentNode() instanceof Element) {
+            top = (Element) top.getParentNode();
+        }
+        return !Collections.disjoint(names, bindings(top));
+    }
+
+    private static void hoistVariables(Element root) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Element loop : descendants(root)) {
+                if (!F.isXsl(loop, "for-each")) {
+                    continue;
+                }
+                for (Element v : F.elements(loop)) {
+                    if (hoistable(v, loop)) {
+                        loop.getParentNode().insertBefore(v, loop);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean hoistable(Element v, Element loop) {
+        if (!F.isXsl(v, "variable") || !v.hasAttribute("select")
+            || v.hasChildNodes()) {
+            return false;
+        }
+        String name = v.getAttribute("name");
+        String select = v.getAttribute("select");
+        Set<String> inner = bindings(loop);
+        if (!invariant(select, inner) || !documentFree(select)
+            && !sameDocument(loop.getAttribute("select"))) {
+            return false;
+        }
+        // hoisting must not put two bindings of the name in scope, counting
+        // the top-level ones it would shadow after the loop
+        Element scope = loop;
+        while (!F.isXsl(scope, "template")
+            && scope.getParentNode() instanceof Element) {
+            scope = (Element) scope.getParentNode();
+        }
+        List<Element> scoped = descendants(scope);
+        scoped.addAll(F.elements(loop.getOwnerDocument()
+            .getDocumentElement()));
+        return scoped.stream()
+            .filter(e -> e != v)
+            .filter(e -> F.isXsl(e, "variable") || F.isXsl(e, "param"))
+            .noneMatch(e -> name.equals(e.getAttribute("name")));
+    }
+
+    /**
+     * Whether an expression gives the same value in any document: it has no
+     * paths, which could be from the root of the context document, and no
+     * key() or id() lookups in the context document.
+     */
+    public static boolean documentFree(String expr) {
+        String s = XslLint.blankLiterals(expr);
+        if (s.indexOf('/') >= 0) {
+            return false;
+        }
+        for (String f : functions(s)) {
+            if ("key".equals(f) || "id".equals(f)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the nodes selected by an expression are in the document of the
+     * context node: it has no variables, which may hold nodes of other
+     * documents, and calls neither document() nor extension functions.
+     */
+    public static boolean sameDocument(String expr) {
+        String s = XslLint.blankLiterals(expr);
+        if (s.indexOf('$') >= 0) {
+            return false;
+        }
+        for (String f : functions(s)) {
+            if ("document".equals(f) || f.indexOf(':') >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Names of the functions called in an expression without literals */
+    private static List<String> functions(String s) {
+        List<String> names = new ArrayList<>();
+        Matcher m = CALL.matcher(s);
+        while (m.find()) {
+            names.add(m.group(1));
+        }
+        return names;
+    }
+
+    /** Names of variables and params declared inside the element */
+    private static Set<String> bindings(Element e) {
+        Set<String> names = new HashSet<>();
+        for (Element d : descendants(e)) {
+            if (F.isXsl(d, "variable") || F.isXsl(d, "param")) {
+                names.add(d.getAttribute("name"));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Whether an expression gives the same value for all context nodes of the
+     * same document: it has no relative paths outside of predicates, no
+     * context functions, and no variables declared in the given names.
+     */
+    public static boolean invariant(String expr, Set<String> locals) {
+        String s = XslLint.blankLiterals(expr);
+        int depth = 0;
+        boolean operand = false;
+        char prev = 0;
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            int next = i + 1;
+            if (Character.isWhitespace(c)) {
+                i = next;
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                next = s.indexOf(c, i + 1) + 1;
+                operand = true;
+            } else if (c == '$') {
+                next = nameEnd(s, i + 1);
+                if (locals.contains(s.substring(i + 1, next))) {
+                    return false;
+                }
+                operand = true;
+            } else if (Character.isDigit(c) || c == '.' && i + 1 < s.length()
+                && Character.isDigit(s.charAt(i + 1))) {
+                while (next < s.length() && (Character.isDigit(s.charAt(next))
+                    || s.charAt(next) == '.')) {
+                    next += 1;
+                }
+                operand = true;
+            } else if (c == '.') {
+                next = s.startsWith("..", i) ? i + 2 : i + 1;
+                if (depth == 0 && prev != '/') {
+                    return false;
+                }
+                operand = true;
+            } else if (c == '@') {
+                if (depth == 0 && prev != '/') {
+                    return false;
+                }
+                operand = false;
+            } else if (c == '*' && operand) {
+                operand = false;
+            } else if (c == '*') {
+                if (depth == 0 && prev != '/' && prev != '@' && prev != ':') {
+                    return false;
+                }
+                operand = true;
+            } else if (Character.isLetter(c) || c == '_') {
+                next = nameEnd(s, i);
+                String name = s.substring(i, next);
+                int after = skipSpaces(s, next);
+                if (operand && OPERATORS.contains(name)) {
+                    operand = false;
+                } else if (after < s.length() && s.charAt(after) == '(') {
+                    if (CONTEXT_FUNCTIONS.contains(name) && (depth == 0
+                        || "current".equals(name))) {
+                        return false;
+                    }
+                    int arg = skipSpaces(s, after + 1);
+                    if (depth == 0 && CONTEXT_DEFAULTS.contains(name)
+                        && arg < s.length() && s.charAt(arg) == ')') {
+                        return false;
+                    }
+                    if ("node".equals(name) || "text".equals(name)
+                        || "comment".equals(name)
+                        || "processing-instruction".equals(name)) {
+                        if (depth == 0 && prev != '/' && prev != ':') {
+                            return false;
+                        }
+                    }
+                    operand = false;
+                } else if (s.startsWith("::", after)) {
+                    if (depth == 0 && prev != '/') {
+                        return false;
+                    }
+                    next = after + 2;
+                    c = ':';
+                    operand = false;
+                } else {
+                    if (depth == 0 && prev != '/' && prev != '@'
+                        && prev != ':') {
+                        return false;
+                    }
+                    operand = true;
+                }
+            } else if (c == '[') {
+                depth += 1;
+                operand = false;
+            } else if (c == ']') {
+                depth -= 1;
+                operand = true;
+            } else if (c == ')') {
+                operand = true;
+            } else {
+                operand = false;
+            }
+            prev = c;
+            i = next;
+        }
+        return true;
+    }
+
+    private static int nameEnd(String s, int start) {
+        int i = start;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            boolean prefixed = c == ':' && i + 1 < s.length()
+                && s.charAt(i + 1) != ':' && (i == 0 || s.charAt(i - 1) != ':');
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '-'
+                || c == '.' || prefixed) {
+                i += 1;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int skipSpaces(String s, int start) {
+        int i = start;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** A //name[@attr=value] lookup in an expression */
+    private static class Lookup {
+        final Element element;
+        final String attr;
+        final int start;
+        final int end;
+        final String value;
+
+        /** Name of the key replacing the lookup */
+        String key;
+
+        Lookup(Element element, String attr, Matcher m) {
+            this.element = element;
+            this.attr = attr;
+            this.start = m.start();
+            this.end = m.end();
+            this.value = m.group(3);
+        }
+    }
+
+    private static void addKeys(Element root) {
+        Map<String, List<Lookup>> lookups = new LinkedHashMap<>();
+        for (Element e : descendants(root)) {
+            if (F.isXsl(e, "key")) {
+                continue;
+            }
+            for (String attr : EXPRESSIONS) {
+                String expr = e.getAttribute(attr);
+                String blank = XslLint.blankLiterals(expr);
+                Matcher m = LOOKUP.matcher(expr);
+                while (m.find()) {
+                    if (blank.startsWith("//", m.start())
+                        && startsPath(blank, m.start())
+                        && !continues(blank, m.end())) {
+                        String match = m.group(1) + " @" + m.group(2);
+                        lookups.computeIfAbsent(match, k -> new ArrayList<>())
+                            .add(new Lookup(e, attr, m));
+                    }
+                }
+            }
+        }
+        Map<Element, Map<String, List<Lookup>>> rewrites = new HashMap<>();
+        for (Map.Entry<String, List<Lookup>> entry : lookups.entrySet()) {
+            List<Lookup> ls = entry.getValue();
+            if (ls.size() < 2 && !inLoop(ls.get(0).element)) {
+                continue;
+            }
+            String[] match = entry.getKey().split(" ");
+            String key = key(root, match[0], match[1]);
+            for (Lookup lookup : ls) {
+                lookup.key = key;
+                rewrites.computeIfAbsent(lookup.element, k -> new HashMap<>())
+                    .computeIfAbsent(lookup.attr, k -> new ArrayList<>())
+                    .add(lookup);
+            }
+        }
+        rewrites.forEach((e, attrs) -> attrs.forEach((attr, ls) -> {
+            StringBuilder expr = new StringBuilder(e.getAttribute(attr));
+            ls.sort((a, b) -> b.start - a.start);
+            for (Lookup lookup : ls) {
+                expr.replace(lookup.start, lookup.end,
+                    "key('" + lookup.key + "', " + lookup.value + ")");
+            }
+            e.setAttribute(attr, expr.toString());
+        }));
+    }
+
+    /** Name of a key declared for the lookup, declare one if needed */
+    private static String key(Element root, String match, String use) {
+        Element first = null;
+        Set<String> names = new HashSet<>();
+        for (Element e : F.elements(root)) {
+            if (F.isXsl(e, "key")) {
+                if (match.equals(e.getAttribute("match"))
+                    && use.equals(e.getAttribute("use"))) {
+                    return e.getAttribute("name");
+                }
+                names.add(e.getAttribute("name"));
+            }
+            if (first == null && !F.isXsl(e, "import")) {
+                first = e;
+            }
+        }
+        String base = "opt." + match.replace(':', '.') + "."
+            + use.substring(1).replace(':', '.');
+        String name = base;
+        for (int i = 1; names.contains(name); i++) {
+            name = base + i;
+        }
+        Document doc = root.getOwnerDocument();
+        String tag = root.getTagName();
+        String qname = tag.substring(0, tag.indexOf(':') + 1) + "key";
+        Element key = root.getNamespaceURI() == null
+            ? doc.createElement(qname) : doc.createElementNS(F.XSLT, qname);
+        key.setAttribute("name", name);
+        key.setAttribute("match", match);
+        key.setAttribute("use", use);
+        root.insertBefore(key, first);
+        return name;
+    }
+
+    /** Whether the position starts a path, not continues one */
+    private static boolean startsPath(String s, int pos) {
+        int i = pos - 1;
+        while (i >= 0 && Character.isWhitespace(s.charAt(i))) {
+            i -= 1;
+        }
+        return i < 0 || "(,|[=<>".indexOf(s.charAt(i)) >= 0;
+    }
+
+    /** Whether a predicate follows the position */
+    private static boolean continues(String s, int pos) {
+        int i = skipSpaces(s, pos);
+        return i < s.length() && s.charAt(i) == '[';
+    }
+
+    private static boolean inLoop(Element e) {
+        for (Node n = e.getParentNode(); n != null; n = n.getParentNode()) {
+            if (F.isXsl(n, "for-each")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(Element ancestor, Node node) {
+        for (Node n = node; n != null; n = n.getParentNode()) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Descendant elements in document order */
+    private static List<Element> descendants(Element e) {
+        NodeList ls = e.getElementsByTagName("*");
+        List<Element> elements = new ArrayList<>(ls.getLength());
+        for (int i = 0; i < ls.getLength(); i++) {
+            elements.add((Element) ls.item(i));
+        }
+        return elements;
+    }
+
+}
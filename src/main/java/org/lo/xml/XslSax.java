@@ -0,0 +1,800 @@
+package org.lo.xml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * Streaming transformation for a subset of xslt, such as the DOM built by
+ * {@link Xsl}. The subset has templates matching element names, with
+ * xsl:apply-templates of child elements, xsl:copy, xsl:value-of, xsl:if on
+ * attributes, xsl:text and literal elements. A stylesheet in the subset runs
+ * as a SAX ContentHandler in one pass over the input, without building a DOM
+ * or compiling Templates; only the attributes of the open elements are kept.
+ * <p>
+ * Use {@link #tr(Node)} to fall back to the JAXP engine for stylesheets
+ * outside of the subset.
+ *
+ * @author phuc
+ */
+public class XslSax implements Templates {
+
+    private static final String NAME = "[A-Za-z_][\\w.-]*";
+
+    private static final Pattern STEP = Pattern.compile(
+        "\\s*(\\*|" + NAME + ")\\s*(?:\\[(.*)\\])?\\s*");
+
+    private static final Pattern HAS = Pattern.compile(
+        "\\s*(not\\s*\\(\\s*)?@(" + NAME + ")\\s*(\\)\\s*)?");
+
+    private static final Pattern EQUALS = Pattern.compile(
+        "\\s*@(" + NAME + ")\\s*(!?=)\\s*(?:'([^']*)'|\"([^\"]*)\")\\s*");
+
+    private static final Set<String> OUTPUT = new HashSet<>(Arrays.asList(
+        OutputKeys.METHOD, OutputKeys.VERSION, OutputKeys.ENCODING,
+        OutputKeys.OMIT_XML_DECLARATION, OutputKeys.STANDALONE,
+        OutputKeys.DOCTYPE_PUBLIC, OutputKeys.DOCTYPE_SYSTEM,
+        OutputKeys.CDATA_SECTION_ELEMENTS, OutputKeys.INDENT,
+        OutputKeys.MEDIA_TYPE));
+
+    private static final Attributes NO_ATTRS = new AttributesImpl();
+
+    private static final Predicate<Attributes> ANY = attrs -> true;
+
+    private enum Kind {
+        START, END, COPY, END_COPY, TEXT, ATTR, IF, APPLY, VALUE
+    }
+
+    /** An instruction; APPLY and VALUE consume the children of the node */
+    private static class Op {
+        final Kind kind;
+        final String name;
+        final Attributes attrs;
+        final Predicate<Attributes> test;
+        final Step select;
+        int jump;
+
+        Op(Kind kind, String name) {
+            this(kind, name, NO_ATTRS, null, null);
+        }
+
+        Op(
+            Kind kind,
+            String name,
+            Attributes attrs,
+            Predicate<Attributes> test,
+            Step select) {
+            this.kind = kind;
+            this.name = name;
+            this.attrs = attrs;
+            this.test = test;
+            this.select = select;
+        }
+    }
+
+    /** Child step of a pattern or select, null name for any element */
+    private static class Step {
+        final String name;
+        final Predicate<Attributes> test;
+
+        Step(String name, Predicate<Attributes> test) {
+            this.name = name;
+            this.test = test;
+        }
+
+        boolean matches(String uri, String local, Attributes attrs) {
+            return (name == null || uri.isEmpty() && name.equals(local))
+                && test.test(attrs);
+        }
+    }
+
+    private static class Rule {
+        final Step match;
+        final double priority;
+        final int order;
+        final Op[] ops;
+
+        Rule(Step match, double priority, int order, Op[] ops) {
+            this.match = match;
+            this.priority = priority;
+            this.order = order;
+            this.ops = ops;
+        }
+    }
+
+    /** Built-in template: apply templates to all children */
+    private static final Op[] BUILTIN = { new Op(Kind.APPLY, null) };
+
+    /** Rules by priority then by reverse document order */
+    private final List<Rule> rules = new ArrayList<>();
+
+    private Op[] root = BUILTIN;
+
+    private final Properties output = new Properties();
+
+    /** Compile a stylesheet in the subset, or return empty */
+    public static Optional<XslSax> compile(Node xsl) {
+        try {
+            return Optional.of(of(xsl));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static Optional<XslSax> compile(Supplier<Node> xsl) {
+        return compile(xsl.get());
+    }
+
+    /**
+     * Compile a stylesheet in the subset. Throw IllegalArgumentException
+     * naming the first construct outside of the subset.
+     */
+    public static XslSax of(Node xsl) {
+        return new XslSax(F.root(xsl));
+    }
+
+    public static XslSax of(Supplier<Node> xsl) {
+        return of(xsl.get());
+    }
+
+    /** Streaming transformation if possible, otherwise the JAXP one */
+    public static Tr tr(Node xsl) {
+        return compile(xsl).map(Tr::new).orElseGet(() -> Tr.xsl(xsl));
+    }
+
+    public static Tr tr(Supplier<Node> xsl) {
+        return tr(xsl.get());
+    }
+
+    private XslSax(Element xsl) {
+        String name = F.xslName(xsl);
+        if (!"stylesheet".equals(name) && !"transform".equals(name)) {
+            throw unsupported(xsl);
+        }
+        for (Node n : attributes(xsl)) {
+            String attr = n.getNodeName();
+            if (!"version".equals(attr) && !(attr.startsWith("xmlns:")
+                && F.XSLT.equals(n.getNodeValue()))) {
+                throw unsupported(n);
+            }
+        }
+        List<Rule> all = new ArrayList<>();
+        for (Element e : F.elements(xsl)) {
+            if (F.isXsl(e, "output")) {
+                for (Node n : attributes(e)) {
+                    if (!OUTPUT.contains(n.getNodeName())) {
+                        throw unsupported(n);
+                    }
+                    output.setProperty(n.getNodeName(), n.getNodeValue());
+                }
+            } else if (F.isXsl(e, "template")) {
+                checkAttributes(e, "match");
+                String match = e.getAttribute("match").trim();
+                Op[] ops = template(e);
+                if ("/".equals(match)) {
+                    root = ops;
+                } else {
+                    Step step = step(match, e);
+                    double priority = step.test != ANY ? 0.5
+                        : step.name == null ? -0.5 : 0;
+                    all.add(new Rule(step, priority, all.size(), ops));
+                }
+            } else {
+                throw unsupported(e);
+            }
+        }
+        all.sort(Comparator.comparingDouble((Rule r) -> -r.priority)
+            .thenComparingInt(r -> -r.order));
+        rules.addAll(all);
+    }
+
+    @Override
+    public Transformer newTransformer() {
+        return new SaxTransformer(this);
+    }
+
+    @Override
+    public Properties getOutputProperties() {
+        Properties props = new Properties();
+        props.putAll(output);
+        return props;
+    }
+
+    private Op[] template(Element template) {
+        List<Op> ops = new ArrayList<>();
+        body(template, ops);
+        long consumers = ops.stream()
+            .filter(op -> op.kind == Kind.APPLY || op.kind == Kind.VALUE)
+            .count();
+        if (consumers > 1) {
+            throw new IllegalArgumentException(
+                "Not streamable, children are used more than once in "
+                    + template.getAttribute("match"));
+        }
+        return ops.toArray(new Op[0]);
+    }
+
+    private void body(Element parent, List<Op> ops) {
+        for (Node n = parent.getFirstChild(); n != null; n = n
+            .getNextSibling()) {
+            if (n instanceof Element) {
+                instruction((Element) n, ops);
+            } else if (n.getNodeType() == Node.TEXT_NODE
+                || n.getNodeType() == Node.CDATA_SECTION_NODE) {
+                if (!n.getNodeValue().trim().isEmpty()) {
+                    ops.add(new Op(Kind.TEXT, n.getNodeValue()));
+                }
+            }
+        }
+    }
+
+    private void instruction(Element e, List<Op> ops) {
+        String name = F.xslName(e);
+        if (name == null) {
+            literal(e, ops);
+        } else if ("text".equals(name)) {
+            checkAttributes(e);
+            ops.add(new Op(Kind.TEXT, e.getTextContent()));
+        } else if ("value-of".equals(name)) {
+            checkAttributes(e, "select");
+            String select = e.getAttribute("select").trim();
+            if (".".equals(select)) {
+                ops.add(new Op(Kind.VALUE, null));
+            } else if (select.matches("@" + NAME)) {
+                ops.add(new Op(Kind.ATTR, select.substring(1)));
+            } else {
+                throw unsupported(e.getAttributeNode("select"));
+            }
+        } else if ("apply-templates".equals(name)) {
+            checkAttributes(e, "select");
+            if (e.hasChildNodes()) {
+                throw unsupported(e.getFirstChild());
+            }
+            String select = e.getAttribute("select").trim();
+            Step step = select.isEmpty() || "node()".equals(select) ? null
+                : step(select, e);
+            ops.add(new Op(Kind.APPLY, null, NO_ATTRS, null, step));
+        } else if ("copy".equals(name)) {
+            checkAttributes(e);
+            ops.add(new Op(Kind.COPY, null));
+            body(e, ops);
+            ops.add(new Op(Kind.END_COPY, null));
+        } else if ("if".equals(name)) {
+            checkAttributes(e, "test");
+            Op op = new Op(Kind.IF, null, NO_ATTRS,
+                test(e.getAttribute("test"), e), null);
+            ops.add(op);
+            body(e, ops);
+            op.jump = ops.size();
+        } else {
+            throw unsupported(e);
+        }
+    }
+
+    private void literal(Element e, List<Op> ops) {
+        String tag = e.getTagName();
+        if (tag.indexOf(':') >= 0) {
+            throw unsupported(e);
+        }
+        AttributesImpl attrs = new AttributesImpl();
+        for (Node n : attributes(e)) {
+            String name = n.getNodeName();
+            String value = n.getNodeValue();
+            if (name.indexOf(':') >= 0 || "xmlns".equals(name)
+                || value.indexOf('{') >= 0 || value.indexOf('}') >= 0) {
+                throw unsupported(n);
+            }
+            attrs.addAttribute("", name, name, "CDATA", value);
+        }
+        ops.add(new Op(Kind.START, tag, attrs, null, null));
+        body(e, ops);
+        ops.add(new Op(Kind.END, tag));
+    }
+
+    private static Step step(String expr, Node at) {
+        Matcher m = STEP.matcher(expr);
+        if (!m.matches()) {
+            throw unsupported(at, expr);
+        }
+        String name = "*".equals(m.group(1)) ? null : m.group(1);
+        return new Step(name, m.group(2) == null ? ANY : test(m.group(2), at));
+    }
+
+    /** Test on the attributes of the context element */
+    private static Predicate<Attributes> test(String expr, Node at) {
+        Matcher m = HAS.matcher(expr);
+        if (m.matches() && (m.group(1) == null) == (m.group(3) == null)) {
+            String name = m.group(2);
+            boolean not = m.group(1) != null;
+            return attrs -> (value(attrs, name) == null) == not;
+        }
+        m = EQUALS.matcher(expr);
+        if (m.matches()) {
+            String name = m.group(1);
+            boolean not = "!=".equals(m.group(2));
+            String literal = m.group(3) != null ? m.group(3) : m.group(4);
+            return attrs -> {
+                String value = value(attrs, name);
+                return value != null && literal.equals(value) != not;
+            };
+        }
+        throw unsupported(at, expr);
+    }
+
+    /** Value of an attribute having no namespace, or null if none */
+    private static String value(Attributes attrs, String name) {
+        for (int i = 0; i < attrs.getLength(); i++) {
+            String uri = attrs.getURI(i);
+            if ((uri == null || uri.isEmpty())
+                && name.equals(localName(attrs.getLocalName(i),
+                    attrs.getQName(i)))) {
+                return attrs.getValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static String localName(String local, String qName) {
+        return local == null || local.isEmpty()
+            ? qName.substring(qName.indexOf(':') + 1) : local;
+    }
+
+    private static List<Node> attributes(Element e) {
+        NamedNodeMap map = e.getAttributes();
+        List<Node> attrs = new ArrayList<>(map.getLength());
+        for (int i = 0; i < map.getLength(); i++) {
+            attrs.add(map.item(i));
+        }
+        return attrs;
+    }
+
+    private static void checkAttributes(Element e, String... allowed) {
+        List<String> names = Arrays.asList(allowed);
+        for (Node n : attributes(e)) {
+            if (!names.contains(n.getNodeName())) {
+                throw unsupported(n);
+            }
+        }
+    }
+
+    private static IllegalArgumentException unsupported(Node node) {
+        return unsupported(node, node instanceof Attr
+            ? "@" + node.getNodeName() : node.getNodeName());
+    }
+
+    private static IllegalArgumentException unsupported(Node at, String what) {
+        Node owner = at instanceof Attr ? ((Attr) at).getOwnerElement() : at;
+        return new IllegalArgumentException("Not in the streaming subset: "
+            + what + " in " + (owner == null ? at : owner.getNodeName()));
+    }
+
+    /** Processing of an input node */
+    private static class Frame {
+        final boolean element;
+        final String uri;
+        final String local;
+        final String qName;
+        final Attributes attrs;
+        final Op[] ops;
+
+        /** Next instruction after the children are processed */
+        int pc;
+
+        /** Select of children; null if the children are not applied */
+        Op apply;
+
+        Frame(Op[] ops) {
+            this(false, "", "", "", NO_ATTRS, ops);
+        }
+
+        Frame(
+            boolean element,
+            String uri,
+            String local,
+            String qName,
+            Attributes attrs,
+            Op[] ops) {
+            this.element = element;
+            this.uri = uri;
+            this.local = local;
+            this.qName = qName;
+            this.attrs = attrs;
+            this.ops = ops;
+        }
+    }
+
+    /** Run the stylesheet over input events, write output events */
+    private static class Run extends DefaultHandler {
+        private final XslSax xsl;
+        private final SAXTransformerFactory factory;
+        private final Properties props;
+        private final Result result;
+
+        /** Output, created when its method is known */
+        private TransformerHandler out;
+
+        /** Whitespace written before the output is created */
+        private final StringBuilder pending = new StringBuilder();
+
+        private final Deque<Frame> frames = new ArrayDeque<>();
+
+        private final NamespaceSupport ns = new NamespaceSupport();
+
+        private final List<String[]> mappings = new ArrayList<>();
+
+        /** Depth of the subtree being skipped */
+        private int skip;
+
+        /** Text of the subtree being read by xsl:value-of */
+        private StringBuilder value;
+
+        private int valueDepth;
+
+        Run(
+            XslSax xsl,
+            SAXTransformerFactory factory,
+            Properties props,
+            Result result) {
+            this.xsl = xsl;
+            this.factory = factory;
+            this.props = props;
+            this.result = result;
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            Frame doc = new Frame(xsl.root);
+            frames.push(doc);
+            start(doc);
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            end(frames.pop());
+            open("", "");
+            out.endDocument();
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            mappings.add(new String[] { prefix, uri });
+        }
+
+        @Override
+        public void startElement(
+            String uri,
+            String localName,
+            String qName,
+            Attributes attrs) throws SAXException {
+            ns.pushContext();
+            mappings.forEach(m -> ns.declarePrefix(m[0], m[1]));
+            mappings.clear();
+            if (skip > 0) {
+                skip += 1;
+                return;
+            }
+            if (value != null) {
+                valueDepth += 1;
+                return;
+            }
+            String u = uri == null ? "" : uri;
+            String local = localName(localName, qName);
+            Frame parent = frames.peek();
+            if (parent.apply == null || parent.apply.select != null
+                && !parent.apply.select.matches(u, local, attrs)) {
+                skip = 1;
+                return;
+            }
+            Frame f = new Frame(true, u, local, qName,
+                new AttributesImpl(attrs), xsl.template(u, local, attrs));
+            frames.push(f);
+            start(f);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+            if (skip > 0) {
+                skip -= 1;
+            } else if (value != null && valueDepth > 0) {
+                valueDepth -= 1;
+            } else {
+                end(frames.pop());
+            }
+            ns.popContext();
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+            throws SAXException {
+            if (skip > 0) {
+                return;
+            }
+            if (value != null) {
+                value.append(ch, start, length);
+                return;
+            }
+            Op apply = frames.peek().apply;
+            if (apply != null && apply.select == null) {
+                text(new String(ch, start, length));
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException {
+            characters(ch, start, length);
+        }
+
+        /** Run the instructions up to the children */
+        private void start(Frame f) throws SAXException {
+            f.pc = run(f, 0);
+            if (f.pc < f.ops.length) {
+                Op op = f.ops[f.pc];
+                if (op.kind == Kind.VALUE) {
+                    value = new StringBuilder();
+                    valueDepth = 0;
+                } else {
+                    f.apply = op;
+                }
+                f.pc += 1;
+            }
+        }
+
+        /** Run the instructions after the children */
+        private void end(Frame f) throws SAXException {
+            if (value != null) {
+                String text = value.toString();
+                value = null;
+                text(text);
+            }
+            run(f, f.pc);
+        }
+
+        /** Run instructions until one that consumes the children */
+        private int run(Frame f, int from) throws SAXException {
+            Op[] ops = f.ops;
+            int pc = from;
+            while (pc < ops.length) {
+                Op op = ops[pc];
+                switch (op.kind) {
+                case START:
+                    open("", op.name);
+                    out.startElement("", op.name, op.name, op.attrs);
+                    break;
+                case END:
+                    out.endElement("", op.name, op.name);
+                    break;
+                case COPY:
+                    if (f.element) {
+                        open(f.uri, f.local);
+                        for (String p : prefixes()) {
+                            out.startPrefixMapping(p, ns.getURI(p));
+                        }
+                        out.startElement(f.uri, f.local, f.qName, NO_ATTRS);
+                    }
+                    break;
+                case END_COPY:
+                    if (f.element) {
+                        out.endElement(f.uri, f.local, f.qName);
+                        for (String p : prefixes()) {
+                            out.endPrefixMapping(p);
+                        }
+                    }
+                    break;
+                case TEXT:
+                    text(op.name);
+                    break;
+                case ATTR:
+                    String v = value(f.attrs, op.name);
+                    text(v == null ? "" : v);
+                    break;
+                case IF:
+                    if (!op.test.test(f.attrs)) {
+                        pc = op.jump;
+                        continue;
+                    }
+                    break;
+                default:
+                    return pc;
+                }
+                pc += 1;
+            }
+            return pc;
+        }
+
+        /** Namespaces in scope, copied with an element */
+        private List<String> prefixes() {
+            List<String> prefixes = new ArrayList<>();
+            Enumeration<?> e = ns.getPrefixes();
+            while (e.hasMoreElements()) {
+                String p = (String) e.nextElement();
+                if (!"xml".equals(p)) {
+                    prefixes.add(p);
+                }
+            }
+            String uri = ns.getURI("");
+            if (uri != null && !uri.isEmpty()) {
+                prefixes.add("");
+            }
+            return prefixes;
+        }
+
+        private void text(String s) throws SAXException {
+            if (s.isEmpty()) {
+                return;
+            }
+            if (out == null && s.trim().isEmpty()) {
+                pending.append(s);
+                return;
+            }
+            open("", "");
+            out.characters(s.toCharArray(), 0, s.length());
+        }
+
+        /**
+         * Create the output before the first element or text; without an
+         * output method, the method is html if the first element is html.
+         */
+        private void open(String uri, String local) throws SAXException {
+            if (out != null) {
+                return;
+            }
+            try {
+                out = factory.newTransformerHandler();
+            } catch (Exception e) {
+                throw new SAXException(e);
+            }
+            Transformer tr = out.getTransformer();
+            if (!props.containsKey(OutputKeys.METHOD)) {
+                boolean html = uri.isEmpty() && "html".equalsIgnoreCase(local);
+                tr.setOutputProperty(OutputKeys.METHOD, html ? "html" : "xml");
+                if (html) {
+                    tr.setOutputProperty(OutputKeys.INDENT, "yes");
+                }
+            }
+            props.stringPropertyNames()
+                .forEach(p -> tr.setOutputProperty(p, props.getProperty(p)));
+            out.setResult(result);
+            out.startDocument();
+            if (pending.length() > 0) {
+                text(pending.toString());
+                pending.setLength(0);
+            }
+        }
+    }
+
+    /** Rule of the highest priority matching an element */
+    private Op[] template(String uri, String local, Attributes attrs) {
+        for (Rule r : rules) {
+            if (r.match.matches(uri, local, attrs)) {
+                return r.ops;
+            }
+        }
+        return BUILTIN;
+    }
+
+    /** Transformer running the stylesheet over SAX events of the input */
+    private static class SaxTransformer extends Transformer {
+        private final XslSax xsl;
+        private final Properties props;
+        private final Properties params = new Properties();
+        private URIResolver resolver;
+        private ErrorListener listener;
+
+        SaxTransformer(XslSax xsl) {
+            this.xsl = xsl;
+            this.props = xsl.getOutputProperties();
+        }
+
+        @Override
+        public void transform(Source input, Result output)
+            throws TransformerException {
+            SAXTransformerFactory tf;
+            tf = (SAXTransformerFactory) TransformerFactory.newInstance();
+            Transformer reader = tf.newTransformer();
+            if (resolver != null) {
+                reader.setURIResolver(resolver);
+            }
+            if (listener != null) {
+                reader.setErrorListener(listener);
+            }
+            reader.transform(input,
+                new SAXResult(new Run(xsl, tf, props, output)));
+        }
+
+        @Override
+        public void setParameter(String name, Object value) {
+            params.put(name, value);
+        }
+
+        @Override
+        public Object getParameter(String name) {
+            return params.get(name);
+        }
+
+        @Override
+        public void clearParameters() {
+            params.clear();
+        }
+
+        @Override
+        public void setURIResolver(URIResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public URIResolver getURIResolver() {
+            return resolver;
+        }
+
+        @Override
+        public void setOutputProperties(Properties oformat) {
+            props.clear();
+            props.putAll(oformat == null ? xsl.output : oformat);
+        }
+
+        @Override
+        public Properties getOutputProperties() {
+            Properties copy = new Properties();
+            copy.putAll(props);
+            return copy;
+        }
+
+        @Override
+        public void setOutputProperty(String name, String value) {
+            props.setProperty(name, value);
+        }
+
+        @Override
+        public String getOutputProperty(String name) {
+            return props.getProperty(name);
+        }
+
+        @Override
+        public void setErrorListener(ErrorListener listener) {
+            this.listener = F.checkNotNull(listener);
+        }
+
+        @Override
+        public ErrorListener getErrorListener() {
+            return listener;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EscTest {
+
+    @Test
+    public void xmlText() {
+        assertEquals("a &lt;b&gt; &amp; \"c\"", Esc.xml("a <b> & \"c\""));
+        assertEquals("plain ascii", Esc.xml("plain ascii"));
+        assertEquals("line\nbreak&#13;", Esc.xml("line\nbreak\r"));
+    }
+
+    @Test
+    public void xmlAttribute() {
+        assertEquals("&quot;x&quot; &lt; &amp;&#9;&#10;",
+            Esc.attr("\"x\" < &\t\n"));
+    }
+
+    @Test
+    public void json() {
+        assertEquals("say \\\"hi\\\"\\n\\\\ \\u0001",
+            Esc.json("say \"hi\"\n\\ \u0001"));
+        assertEquals("\\u2028", Esc.json("\u2028"));
+    }
+
+    @Test
+    public void nonAsciiIsKept() {
+        String cjk = "\u6F22\u5B57 <\u6771\u4EAC>";
+        assertEquals("\u6F22\u5B57 &lt;\u6771\u4EAC&gt;", Esc.xml(cjk));
+        assertEquals(cjk, Esc.json(cjk));
+    }
+
+    @Test
+    public void surrogates() {
+        String pair = "\uD83D\uDE00";
+        assertEquals(pair, Esc.xml(pair));
+        assertEquals(pair, Esc.json(pair));
+        assertEquals("a\uFFFDb", Esc.xml("a\uD83Db"));
+        assertEquals("\\udc00", Esc.json("\uDC00"));
+        assertEquals("\uFFFD", Esc.xml("\uD83D"));
+    }
+
+    @Test
+    public void invalidXmlChars() {
+        assertEquals("a\uFFFDb\uFFFD", Esc.xml("a\u0000b\uFFFF"));
+    }
+
+    @Test
+    public void strAppendModes() {
+        String actual = new Str() {
+            @Override
+            protected void doBuild() {
+                a("<item name=\"").aa("Tom & \"Jerry\"").l("\">");
+                a(L).ax("1 < 2").l();
+                a("</item>");
+                a(" {\"k\": \"").aj("tab\there").a("\"}");
+            }
+        }.indent("  ").lineSep("\n").make();
+
+        assertEquals("<item name=\"Tom &amp; &quot;Jerry&quot;\">\n"
+            + "  1 &lt; 2\n"
+            + "</item> {\"k\": \"tab\\there\"}", actual);
+    }
+
+}
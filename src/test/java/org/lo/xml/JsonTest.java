@@ -0,0 +1,108 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JsonTest {
+
+    static class Company extends Json {
+        @Override
+        protected void doBuild() {
+            obj();
+            val(L, "name", "Lo \"xml\"");
+            arr(L, "staff");
+            obj(L, L);
+            val(L, L, L, "id", 1);
+            val(L, L, L, "firstname", "Phuc");
+            val(L, L, L, "active", true);
+            val(L, L, L, "manager", null);
+            obj(L, L);
+            val(L, L, L, "id", 2);
+            arr(L, L, L, "tags");
+            val(L, "founded", 2016);
+            obj(L, "address");
+        }
+    }
+
+    @Test
+    public void compact() {
+        assertEquals("{\"name\":\"Lo \\\"xml\\\"\",\"staff\":["
+            + "{\"id\":1,\"firstname\":\"Phuc\",\"active\":true,"
+            + "\"manager\":null},{\"id\":2,\"tags\":[]}],"
+            + "\"founded\":2016,\"address\":{}}", new Company().make());
+    }
+
+    @Test
+    public void indented() {
+        String expected = new Str() {
+            @Override
+            protected void doBuild() {
+                l("{");
+                l(L, "\"list\": [");
+                l(L, L, "1,");
+                l(L, L, "2");
+                l(L, "],");
+                l(L, "\"empty\": []");
+                a("}");
+            }
+        }.indent("  ").make();
+
+        assertEquals(expected, new Json() {
+            @Override
+            protected void doBuild() {
+                obj();
+                arr(L, "list");
+                val(L, L, 1);
+                val(L, L, 2);
+                arr(L, "empty");
+            }
+        }.indent("  ").make());
+    }
+
+    @Test
+    public void lines() {
+        assertEquals("[1]\n[2]", new Json() {
+            @Override
+            protected void doBuild() {
+                arr();
+                val(L, 1);
+                arr();
+                val(L, 2);
+            }
+        }.lineSep("\n").make());
+    }
+
+    @Test
+    public void stream() {
+        StringWriter out = new StringWriter();
+        Str json = new Company().writeTo(out, 16).build();
+        assertEquals("", json.get());
+        assertEquals(new Company().make(), out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyRequiredInObject() {
+        new Json() {
+            @Override
+            protected void doBuild() {
+                obj();
+                val(L, 1);
+            }
+        }.make();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void depthCannotSkipLevels() {
+        new Json() {
+            @Override
+            protected void doBuild() {
+                arr();
+                val(L, L, 1);
+            }
+        }.make();
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StrBlocksTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static class Tenant extends Str {
+        final int id;
+
+        Tenant(int id) {
+            this.id = id;
+        }
+
+        @Override
+        protected void doBuild() {
+            l("<tenant id=\"", id, "\">");
+            for (int i = 0; i < 100; i++) {
+                l(L, "<row>", id, ".", i, " \u00e9</row>");
+            }
+            l("</tenant>");
+        }
+    }
+
+    private static List<Str> tenants() {
+        List<Str> ls = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ls.add(new Tenant(i).indent(" "));
+        }
+        return ls;
+    }
+
+    private static String sequential() {
+        Str all = Str.of();
+        tenants().forEach(t -> all.a(t.make()));
+        return all.get();
+    }
+
+    @Test
+    public void buildInOrder() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sequential(), new StrBlocks(tenants(), pool).make());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void writeToWriter() {
+        StrBlocks blocks = new StrBlocks(tenants()).build();
+        assertEquals(sequential(),
+            blocks.writeTo(new StringWriter()).toString());
+    }
+
+    @Test
+    public void writeToChannel() throws Exception {
+        StrBlocks blocks = new StrBlocks(tenants()).build();
+        Path file = tmp.newFile().toPath();
+        try (FileChannel ch = FileChannel.open(file,
+            StandardOpenOption.WRITE)) {
+            long n = blocks.writeTo(ch, StandardCharsets.UTF_8);
+            assertEquals(Files.size(file), n);
+        }
+        assertEquals(sequential(),
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+}
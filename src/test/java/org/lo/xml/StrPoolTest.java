@@ -0,0 +1,82 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StrPoolTest {
+
+    static class Row extends Str {
+        int id;
+
+        @Override
+        protected void doBuild() {
+            a("<row id=\"", id, "\"/>");
+        }
+    }
+
+    @Test
+    public void resetReusesBuffer() {
+        Row row = new Row();
+        row.id = 1;
+        assertEquals("<row id=\"1\"/>", row.make());
+        int capacity = row.capacity();
+        row.id = 2;
+        assertEquals("<row id=\"2\"/>", row.reset().make());
+        assertEquals(capacity, row.capacity());
+    }
+
+    @Test
+    public void resetReleasesLargeBuffer() {
+        Str s = Str.of().capacity(1000);
+        assertTrue(s.capacity() >= 1000);
+        s.a("data").reset(100);
+        assertEquals(0, s.length());
+        assertEquals(100, s.capacity());
+    }
+
+    @Test
+    public void pool() {
+        StrPool<Row> pool = new StrPool<>(Row::new, 2, 64, 1024);
+        Row row = pool.acquire();
+        assertTrue(row.capacity() >= 64);
+        row.id = 7;
+        assertEquals("<row id=\"7\"/>", row.make());
+        pool.release(row);
+        assertEquals(1, pool.size());
+        assertSame(row, pool.acquire());
+        assertEquals(0, row.length());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void poolForgetsOutput() {
+        StrPool<Row> pool = new StrPool<>(Row::new, 1, 1024);
+        StringBuilder out = new StringBuilder();
+        Row row = pool.acquire();
+        row.writeTo(out, 1).build();
+        pool.release(row);
+        assertEquals("<row id=\"0\"/>", out.toString());
+
+        row = pool.acquire();
+        assertEquals("<row id=\"0\"/>", row.make());
+        assertEquals("<row id=\"0\"/>", out.toString());
+    }
+
+    @Test
+    public void poolIsBounded() {
+        StrPool<Row> pool = new StrPool<>(Row::new, 1, 1024);
+        pool.release(new Row());
+        pool.release(new Row());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void poolDropsLargeBuffers() {
+        StrPool<Str> pool = new StrPool<>(Str::of, 1, 32);
+        String s = pool.apply(str -> str.a(new String(new char[100])).get());
+        assertEquals(100, s.length());
+        assertTrue(pool.acquire().capacity() <= 32);
+    }
+
+}
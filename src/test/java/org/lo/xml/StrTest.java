@@ -35,4 +35,37 @@ public class StrTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void views() throws Exception {
+        Str s = Str.of("<a>", "text", "</a>");
+        assertEquals("<a>text</a>", s.chars().toString());
+        assertEquals("text", s.chars().subSequence(3, 7).toString());
+        assertTrue(s.charBuffer().isReadOnly());
+
+        char[] buf = new char[16];
+        int n = s.reader().read(buf);
+        assertEquals("<a>text</a>", new String(buf, 0, n));
+    }
+
+    @Test
+    public void transformView() {
+        Str xsl = new Str() {
+            @Override
+            protected void doBuild() {
+                a("<xsl:stylesheet version=\"1.0\"");
+                a(" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">");
+                a("<xsl:output method=\"text\"/>");
+                a("<xsl:template match=\"a\">");
+                a("<xsl:value-of select=\"b\"/>");
+                a("</xsl:template>");
+                a("</xsl:stylesheet>");
+            }
+        }.build();
+
+        Str input = Str.of("<a><b>value</b></a>");
+
+        assertEquals("value", Tr.xsl(xsl.chars()).apply(input.chars()));
+        assertEquals("value", Tr.xsl(xsl.chars()).apply(input.reader()));
+    }
+
 }
@@ -0,0 +1,77 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+public class XPathBatchTest {
+
+    private static Xml order(int id) {
+        return new Xml() {
+            @Override
+            protected void doBuild() {
+                ae(e("order", a("id", id)));
+                for (int i = 1; i <= id % 5 + 1; i++) {
+                    ae(L, e("line", a("qty", i), t("item " + i)));
+                }
+            }
+        }.build();
+    }
+
+    @Test
+    public void documents() {
+        List<Node> docs = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            docs.add(order(id).export());
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            XPathBatch batch = new XPathBatch(new XPaths(8), pool);
+            List<String> ids = batch.strings("/order/@id", docs);
+            List<Double> qty = batch.numbers("sum(//@qty)", docs);
+            List<Boolean> big = batch.booleans("count(//line) > 3", docs);
+            List<NodeList> lines = batch.nodeLists("//line", docs);
+            for (int id = 0; id < docs.size(); id++) {
+                Node doc = docs.get(id);
+                assertEquals(String.valueOf(id), ids.get(id));
+                assertEquals(F.eval("sum(//@qty)", doc,
+                    XPathConstants.NUMBER), qty.get(id));
+                assertEquals(id % 5 + 1 > 3, big.get(id));
+                assertEquals(id % 5 + 1, lines.get(id).getLength());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void contextNodes() {
+        List<Node> lines = new ArrayList<>();
+        for (int id = 0; id < 50; id++) {
+            NodeList ls = (NodeList) F.eval("//line", order(id).export(),
+                XPathConstants.NODESET);
+            for (int i = 0; i < ls.getLength(); i++) {
+                lines.add(ls.item(i));
+            }
+        }
+        List<String> items = new XPathBatch().strings("concat(../@id, '/',"
+            + " @qty)", lines);
+        assertEquals(lines.size(), items.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Node line = lines.get(i);
+            assertEquals(line.getParentNode().getAttributes()
+                .getNamedItem("id").getNodeValue() + "/"
+                + line.getAttributes().getNamedItem("qty").getNodeValue(),
+                items.get(i));
+        }
+    }
+
+}
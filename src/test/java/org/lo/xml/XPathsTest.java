@@ -0,0 +1,123 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPathConstants;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class XPathsTest {
+
+    private final Document doc = states();
+
+    private static NamespaceContext namespaces() {
+        return new NamespaceContext() {
+            @Override
+            public String getNamespaceURI(String prefix) {
+                return prefix.equals("s")
+                    ? "urn:s" : XMLConstants.NULL_NS_URI;
+            }
+
+            @Override
+            public String getPrefix(String uri) {
+                return null;
+            }
+
+            @Override
+            public Iterator<String> getPrefixes(String uri) {
+                return Collections.emptyIterator();
+            }
+        };
+    }
+
+    private static Document states() {
+        return F.toDocument(new StreamSource(new StringReader("<states>"
+            + "<state rank='2'>Texas</state>"
+            + "<state rank='1'>Alaska</state>"
+            + "<s:state xmlns:s='urn:s' rank='3'>California</s:state>"
+            + "</states>")));
+    }
+
+    @Test
+    public void compileOnce() {
+        XPaths xp = new XPaths(8);
+        assertEquals("Texas", xp.string("/states/state[1]", doc));
+        assertEquals("Texas", xp.string("/states/state[1]", doc));
+        assertEquals(2, xp.nodes("//state", doc).getLength());
+        assertEquals(1, xp.hits());
+        assertEquals(2, xp.misses());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        XPaths xp = new XPaths(1);
+        xp.string("/states/state[1]", doc);
+        xp.string("/states/state[2]", doc);
+        xp.string("/states/state[1]", doc);
+        assertEquals(0, xp.hits());
+        assertEquals(2, xp.evictions());
+    }
+
+    @Test
+    public void namespaceContext() {
+        XPaths xp = new XPaths(8);
+        NamespaceContext ns = namespaces();
+        for (int i = 0; i < 2; i++) {
+            assertEquals("California", xp.eval("//s:state", ns, doc,
+                XPathConstants.STRING));
+        }
+        assertEquals("California", xp.eval("//s:state", namespaces(), doc,
+            XPathConstants.STRING));
+        assertEquals(1, xp.hits());
+        assertEquals(2, xp.misses());
+    }
+
+    @Test
+    public void concurrentThreads() throws Exception {
+        XPaths xp = new XPaths(8);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Double>> sums = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                sums.add(pool.submit(() -> {
+                    Document states = states();
+                    double sum = 0;
+                    for (int j = 0; j < 100; j++) {
+                        sum += (Double) xp.eval("sum(//@rank)", states,
+                            XPathConstants.NUMBER);
+                    }
+                    return sum;
+                }));
+            }
+            for (Future<Double> sum : sums) {
+                assertEquals(600.0, sum.get(), 0);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(400, xp.hits() + xp.misses());
+        assertTrue(xp.misses() <= 4);
+    }
+
+    @Test
+    public void sharedCache() {
+        long hits = XPaths.SHARED.hits();
+        F.eval("count(//state)", doc, XPathConstants.NUMBER);
+        F.eval("count(//state)", doc, XPathConstants.NUMBER);
+        assertTrue(XPaths.SHARED.hits() > hits);
+    }
+
+}
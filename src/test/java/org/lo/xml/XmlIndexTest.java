@@ -0,0 +1,77 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Test case for indexing elements built by Xml by attribute or name.
+ *
+ * @author phuc
+ */
+public class XmlIndexTest {
+
+    private static Xml orders(int size) {
+        return new Xml() {
+            @Override
+            protected void doBuild() {
+                ae("orders");
+                for (int i = 0; i < size; i++) {
+                    ae(L, e("order", id(i), a("status", i % 2 == 0 ? "open"
+                        : "closed"), e("line", t(i))));
+                }
+            }
+        };
+    }
+
+    @Test
+    public void indexBuiltNodes() {
+        Xml xml = orders(100).build();
+        XmlIndex ids = xml.index("id");
+        assertEquals(100, ids.size());
+        assertEquals("53", ids.get("53").getTextContent());
+        assertNull(ids.get("100"));
+        assertEquals(50, XmlIndex.attribute("status")
+            .addAll(xml.get()).getAll("open").size());
+    }
+
+    @Test
+    public void updateOnAdd() {
+        Xml xml = orders(3);
+        XmlIndex ids = xml.index(XmlIndex.ids());
+        XmlIndex names = xml.index(XmlIndex.names());
+        xml.build();
+        assertEquals(3, ids.size());
+        assertEquals(3, names.getAll("line").size());
+        assertSame(xml.get(), names.get("orders"));
+
+        // attribute added to an element built before
+        XmlIndex refs = xml.index("ref");
+        xml.ae(Xml.L, Xml.L, xml.a("ref", "x"));
+        Element order = refs.get("x");
+        assertEquals("order", order.getTagName());
+        assertEquals("2", order.getTextContent());
+
+        // attribute replaced: the old key no longer finds the element
+        xml.ae(Xml.L, xml.e("order", xml.id(1)));
+        assertEquals(2, ids.getAll("1").size());
+        xml.ae(Xml.L, Xml.L, xml.id("y"));
+        assertEquals(1, ids.getAll("1").size());
+        assertFalse(ids.contains("z"));
+        assertTrue(ids.contains("y"));
+    }
+
+    @Test
+    public void importedNodes() {
+        Document doc = orders(5).build().export();
+        Xml xml = Xml.create();
+        XmlIndex ids = xml.index("id");
+        xml.ae("all");
+        xml.ae(Xml.L, doc.getDocumentElement());
+        assertSame(xml.owner, ids.get("4").getOwnerDocument());
+        assertSame(xml.get(), ids.get("4").getParentNode().getParentNode());
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+public class XmlParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String XML = "<states xmlns:s='urn:s'>"
+        + "<state rank='2'>Texas</state>"
+        + "<s:state rank='1'>Alaska &amp; more</s:state>"
+        + "</states>";
+
+    private static final byte[] BYTES = XML.getBytes(StandardCharsets.UTF_8);
+
+    /** Parse with a new factory and builder, as done without the parser */
+    private static Document naive(String xml) throws Exception {
+        DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+        f.setNamespaceAware(true);
+        return f.newDocumentBuilder()
+            .parse(new InputSource(new StringReader(xml)));
+    }
+
+    @Test
+    public void sameAsNaiveParsing() throws Exception {
+        String expected = F.toString(naive(XML));
+        File file = folder.newFile("states.xml");
+        Files.write(file.toPath(), BYTES);
+        ByteBuffer buf = ByteBuffer.allocateDirect(BYTES.length).put(BYTES);
+        buf.flip();
+
+        assertEquals(expected, F.toString(F.parse(XML)));
+        assertEquals(expected, F.toString(F.parse(new StringReader(XML))));
+        assertEquals(expected, F.toString(F.parse(
+            new ByteArrayInputStream(BYTES))));
+        assertEquals(expected, F.toString(F.parse(file.toPath())));
+        assertEquals(expected, F.toString(F.parse(buf)));
+        assertEquals(0, buf.position());
+        assertEquals("urn:s", F.parse(XML).getDocumentElement()
+            .getLastChild().getNamespaceURI());
+    }
+
+    @Test
+    public void options() throws Exception {
+        String expected = F.toString(naive(XML));
+        XmlParser parser = new XmlParser().deferred(false);
+        assertEquals(expected, F.toString(parser.parse(XML)));
+        parser.namespaceAware(false);
+        assertNull(parser.parse(XML).getDocumentElement().getLastChild()
+            .getNamespaceURI());
+    }
+
+    @Test
+    public void reuseAfterError() {
+        XmlParser parser = new XmlParser();
+        try {
+            parser.parse("<states>");
+            fail("Expect parse error");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("states", parser.parse("<states/>").getDocumentElement()
+            .getTagName());
+    }
+
+    @Test
+    public void disallowDoctype() {
+        String xml = "<!DOCTYPE states [<!ENTITY tx 'Texas'>]>"
+            + "<states>&tx;</states>";
+        assertEquals("Texas", F.parse(xml).getDocumentElement()
+            .getTextContent());
+        try {
+            new XmlParser().doctype(false).parse(xml);
+            fail("Expect DOCTYPE to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("DOCTYPE"));
+        }
+    }
+
+}
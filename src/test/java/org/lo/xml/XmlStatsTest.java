@@ -0,0 +1,62 @@
+package org.lo.xml;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+/**
+ * Test case for counting the nodes and estimating the size of builds.
+ *
+ * @author phuc
+ */
+public class XmlStatsTest {
+
+    @Test
+    public void xml() {
+        Xml xml = new Xml() {
+            @Override
+            protected void doBuild() {
+                ae("states");
+                ae(L, e("state", id(1), e("name", t("Texas"))));
+                ae(L, e("state", id(2), e("name", t("Alaska"))));
+                ac(L, "end");
+            }
+        };
+        XmlStats empty = xml.stats();
+        assertEquals(0, empty.nodes());
+        assertEquals(0, empty.maxDepth());
+
+        XmlStats stats = xml.build().stats();
+        assertEquals(5, stats.elements());
+        assertEquals(2, stats.attributes());
+        assertEquals(2, stats.texts());
+        assertEquals(1, stats.comments());
+        assertEquals(10, stats.nodes());
+        assertEquals(1, stats.count(Node.COMMENT_NODE));
+        assertEquals(4, stats.maxDepth());
+        assertEquals("Texas".length() + "Alaska".length() + "end".length()
+            + 2, stats.chars());
+        assertEquals(5, stats.held());
+        assertTrue(stats.retained() > xml.toXml().length());
+        assertEquals(stats.toString(), xml.stats().toString());
+    }
+
+    @Test
+    public void xsl() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsTemplate("/"));
+                ae(L, L, e("out", xsValue("count(//*)")));
+            }
+        }.build();
+        XmlStats stats = xsl.stats();
+        assertEquals(4, stats.elements());
+        assertEquals(4, stats.maxDepth());
+        assertEquals(XmlStats.of(xsl.get()).nodes(), stats.nodes());
+        assertEquals(4, stats.held());
+    }
+
+}
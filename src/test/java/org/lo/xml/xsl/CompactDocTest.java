@@ -0,0 +1,135 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.lo.xml.CompactDoc;
+import org.lo.xml.Str;
+import org.lo.xml.Tr;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for transforming and navigating array-backed documents.
+ *
+ * @author phuc
+ */
+public class CompactDocTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String orders = new Str() {
+        @Override
+        protected void doBuild() {
+            a("<?xml-stylesheet href='orders.xsl'?>");
+            a("<orders xmlns='urn:o' xmlns:p='urn:p'><!-- orders -->");
+            for (int i = 0; i < 50; i++) {
+                a("<order id='", i, "'>");
+                for (int j = 0; j <= i % 3; j++) {
+                    a("<line p:qty='", j + 1, "'>item &amp; ", j, "</line>");
+                }
+                a("</order>");
+            }
+            a("<?done yes?></orders>");
+        }
+    }.make();
+
+    /** Copy of the input with a total of each order */
+    private final Tr tr = Tr.xsl(new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1());
+            ae(L, a("xmlns:o", "urn:o"), a("xmlns:p", "urn:p"));
+            ae(L, xsTemplate("@*|node()"));
+            ae(L, L, xsCopy(xsApply("@*|node()")));
+            ae(L, xsTemplate("o:order"));
+            ae(L, L, xsCopy(xsApply("@*|node()"),
+                e("total", xsValue("sum(o:line/@p:qty)"))));
+        }
+    }.build());
+
+    @Test
+    public void sameOutputAsText() {
+        CompactDoc doc = CompactDoc.parse(orders);
+        assertEquals(tr.apply(orders), tr.apply(doc.source()));
+        assertEquals(tr.apply(orders), tr.apply(doc.source()));
+    }
+
+    @Test
+    public void navigate() {
+        CompactDoc doc = CompactDoc.parse(orders);
+        int pi = doc.firstChild(0);
+        assertEquals(CompactDoc.PI, doc.kind(pi));
+        assertEquals("xml-stylesheet", doc.name(pi));
+        int root = doc.nextSibling(pi);
+        assertEquals("orders", doc.name(root));
+        assertEquals("urn:o", doc.namespaceUri(root));
+        assertEquals(-1, doc.nextSibling(root));
+        assertEquals(CompactDoc.COMMENT, doc.kind(doc.firstChild(root)));
+
+        int[] orders = doc.select("/orders/order");
+        assertEquals(50, orders.length);
+        assertEquals("7", doc.attribute(orders[7], "id"));
+        assertEquals(root, doc.parent(orders[7]));
+        int line = doc.firstChild(orders[2]);
+        assertEquals("3", doc.attribute(doc.nextSibling(
+            doc.nextSibling(line)), "p:qty"));
+        assertEquals("item & 0item & 1", doc.string(orders[1]));
+
+        assertEquals(99, doc.select("//line").length);
+        assertEquals(99, doc.select("//order/*").length);
+        assertEquals(0, doc.select("/order").length);
+    }
+
+    @Test
+    public void chunkedData() {
+        String big = new String(new char[70000]).replace('\0', 'x');
+        String xml = new Str() {
+            @Override
+            protected void doBuild() {
+                a("<texts>");
+                for (int i = 0; i < 3; i++) {
+                    a("<text n='", i, "' v='", big.substring(i * 1000), "'>",
+                        big, i, "<!--", big, "--></text>");
+                }
+                a("</texts>");
+            }
+        }.make();
+        CompactDoc doc = CompactDoc.parse(xml);
+        int[] texts = doc.select("/texts/text");
+        assertEquals(3, texts.length);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(big + i, doc.string(texts[i]));
+            assertEquals(big.substring(i * 1000),
+                doc.attribute(texts[i], "v"));
+            int comment = doc.nextSibling(doc.firstChild(texts[i]));
+            assertEquals(big, doc.text(comment));
+        }
+        Tr copy = Tr.xsl(new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsCopyOf("."));
+            }
+        }.build());
+        assertEquals(copy.apply(xml), copy.apply(doc.source()));
+    }
+
+    @Test
+    public void file() throws IOException {
+        Path input = folder.newFile("orders.xml").toPath();
+        Files.write(input, orders.getBytes(StandardCharsets.UTF_8));
+        assertEquals(tr.apply(orders),
+            tr.apply(CompactDoc.parse(input).source()));
+    }
+
+}
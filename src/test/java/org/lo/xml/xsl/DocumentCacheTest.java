@@ -0,0 +1,131 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.lo.xml.DocCache;
+import org.lo.xml.Tr;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for caching documents read by document().
+ *
+ * @author phuc
+ */
+public class DocumentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Xsl lookup(String href) {
+        return new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsValue("document('" + href + "')/codes/code[1]"));
+            }
+        }.build();
+    }
+
+    @Test
+    public void revalidateFile() throws IOException {
+        File file = folder.newFile("codes.xml");
+        write(file, "<codes><code>AT</code></codes>");
+
+        DocCache cache = new DocCache(8);
+        Tr tr = Tr.of(c -> c.xsl(lookup(file.toURI().toString()))
+            .resolver(cache));
+        assertEquals("AT", tr.apply());
+        assertEquals("AT", tr.apply());
+        assertEquals("AT", tr.apply());
+        assertEquals(1, cache.misses());
+        assertEquals(2, cache.hits());
+
+        write(file, "<codes><code>BE</code></codes>");
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(
+            file.lastModified() + 2000));
+        assertEquals("BE", tr.apply());
+        assertEquals(1, cache.reloads());
+        assertEquals(0.5, cache.hitRate(), 0.0001);
+    }
+
+    @Test
+    public void leastRecentlyUsed() {
+        DocCache cache = new DocCache(1, (href, base) -> new StreamSource(
+            new StringReader("<codes><code>" + href + "</code></codes>")));
+        Tr a = Tr.of(c -> c.xsl(lookup("a")).resolver(cache));
+        Tr b = Tr.of(c -> c.xsl(lookup("b")).resolver(cache));
+
+        assertEquals("a", a.apply());
+        assertEquals("b", b.apply());
+        assertEquals("a", a.apply());
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.misses());
+        assertEquals(2, cache.evictions());
+    }
+
+    @Test
+    public void concurrentReads() throws IOException, InterruptedException,
+        ExecutionException, TransformerException {
+        File file = folder.newFile("codes.xml");
+        StringBuilder codes = new StringBuilder("<codes>");
+        for (int i = 0; i < 1000; i++) {
+            codes.append("<code>C").append(i).append("</code>");
+        }
+        write(file, codes.append("</codes>").toString());
+
+        DocCache cache = new DocCache(8);
+        DOMSource doc = (DOMSource) cache.resolve(file.toURI().toString(),
+            null);
+        assertFalse(doc.getNode().getClass().getName().contains("Deferred"));
+
+        Tr tr = Tr.of(c -> c.xsl(new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsValue("count(document('" + file.toURI()
+                    + "')/codes/code[starts-with(., 'C9')])"));
+            }
+        }.build()).resolver(cache));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> counts = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                counts.add(executor.submit(() -> tr.apply()));
+            }
+            for (Future<String> count : counts) {
+                assertEquals("111", count.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.misses());
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
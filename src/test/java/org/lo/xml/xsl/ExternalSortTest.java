@@ -0,0 +1,138 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Random;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+
+import org.lo.xml.F;
+import org.lo.xml.Tr;
+import org.lo.xml.TrSort;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for sorting records outside of the engine, in runs spilled to
+ * temp files.
+ *
+ * @author phuc
+ */
+public class ExternalSortTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Xml cities = new Xml() {
+        @Override
+        protected void doBuild() {
+            Random random = new Random(7);
+            String[] names = { "Ames", "boise", "Cary", "dover", "Erie" };
+            ae(e("cities", a("year", "2000")));
+            ae(L, e("note", t("all")));
+            for (int i = 0; i < 100; i++) {
+                String pop = i % 17 == 0 ? "n/a"
+                    : String.valueOf(random.nextInt(50) * 100);
+                ae(L, e("city", a("pop", pop)));
+                ae(L, L, e("name", t(names[random.nextInt(names.length)]
+                    + (i % 10))));
+            }
+        }
+    }.build();
+
+    /** Cities whose names are equal when case is ignored */
+    private final Xml mixedCase = new Xml() {
+        @Override
+        protected void doBuild() {
+            String[] names = { "ames", "Ames", "AMES", "aMes", "Boise",
+                "boise", "bOISE", "cary", "Cary" };
+            ae(e("cities", a("year", "2000")));
+            ae(L, e("note", t("all")));
+            for (int i = 0; i < 30; i++) {
+                ae(L, e("city", a("pop", String.valueOf(i))));
+                ae(L, L, e("name", t(names[i * 7 % names.length])));
+            }
+        }
+    }.build();
+
+    @Test
+    public void sortNumbersDescending() {
+        Xsl sorts = Xsl.create();
+        assertSorted(sorts.xsSort("@pop", sorts.dataTypeNumber(),
+            sorts.orderDescending()), sorts.xsSort("name"));
+    }
+
+    @Test
+    public void sortText() {
+        Xsl sorts = Xsl.create();
+        assertSorted(sorts.xsSort("name"), sorts.xsSort("@pop",
+            sorts.dataTypeNumber()));
+    }
+
+    @Test
+    public void sortUpperFirst() {
+        Xsl sorts = Xsl.create();
+        assertSorted(mixedCase, sorts.xsSort("name", sorts.caseOrderUpper()));
+    }
+
+    @Test
+    public void sortLowerFirst() {
+        Xsl sorts = Xsl.create();
+        assertSorted(mixedCase, sorts.xsSort("name", sorts.caseOrderLower()),
+            sorts.xsSort("@pop", sorts.dataTypeNumber(),
+                sorts.orderDescending()));
+    }
+
+    private void assertSorted(Element... sorts) {
+        assertSorted(cities, sorts);
+    }
+
+    private void assertSorted(Xml input, Element... sorts) {
+        Xsl inEngine = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("cities"));
+                ae(L, L, xsValue("@year"), xsValue("note"), xsLine());
+                ae(L, L, xsApply("city"));
+                for (Element sort : sorts) {
+                    ae(L, L, L, (Element) sort.cloneNode(true));
+                }
+                ae(L, xsTemplate("city"));
+                ae(L, L, xsValue("@pop"), xsText(" "), xsValue("name"));
+                ae(L, L, xsLine());
+            }
+        }.build();
+
+        Xsl presorted = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("cities"));
+                ae(L, L, xsValue("@year"), xsValue("note"), xsLine());
+                ae(L, L, xsApply("city"));
+                ae(L, xsTemplate("city"));
+                ae(L, L, xsValue("@pop"), xsText(" "), xsValue("name"));
+                ae(L, L, xsLine());
+            }
+        }.build();
+
+        File dir = folder.getRoot();
+        TrSort sort = TrSort.of("city", sorts).runSize(16)
+            .tempDir(dir.toPath());
+        String text = F.toString(input.get());
+        String sorted = sort.apply(Tr.xsl(presorted),
+            new StreamSource(new StringReader(text)));
+
+        assertEquals(Tr.xsl(inEngine).apply(input), sorted);
+        assertEquals(0, dir.list().length);
+    }
+
+}
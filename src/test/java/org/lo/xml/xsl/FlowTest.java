@@ -0,0 +1,208 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.lo.xml.Tr;
+import org.lo.xml.TrFlow;
+import org.lo.xml.TrFlow.Publisher;
+import org.lo.xml.TrFlow.Subscriber;
+import org.lo.xml.TrFlow.Subscription;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for transforming published inputs with backpressure.
+ *
+ * @author phuc
+ */
+public class FlowTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private final Tr tr = Tr.xsl(new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1(xsOutputText()));
+            ae(L, xsTemplate("order"));
+            ae(L, L, xsValue("@id"), xsText(":"), xsValue("sum(line)"));
+        }
+    }.build());
+
+    /** Publisher of orders, emitting on demand */
+    private static class Orders implements Publisher<Source> {
+        final int size;
+        final AtomicInteger emitted = new AtomicInteger();
+        final Collector<?> collector;
+
+        /** Id of the order that is not well-formed, -1 for none */
+        int broken = -1;
+
+        /** Max number of orders emitted and not yet collected */
+        int maxAhead;
+
+        Orders(int size, Collector<?> collector) {
+            this.size = size;
+            this.collector = collector;
+        }
+
+        Source order(int id) {
+            return new StreamSource(new StringReader(id == broken ? "<order"
+                : "<order id='" + id + "'><line>" + id + "</line>"
+                    + "<line>1</line></order>"));
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Source> s) {
+            s.onSubscribe(new Subscription() {
+                boolean done;
+
+                @Override
+                public synchronized void request(long n) {
+                    for (long i = 0; i < n && !done; i++) {
+                        int id = emitted.getAndIncrement();
+                        if (id >= size) {
+                            done = true;
+                            s.onComplete();
+                            return;
+                        }
+                        maxAhead = Math.max(maxAhead,
+                            id + 1 - collector.items.size());
+                        s.onNext(order(id));
+                    }
+                    if (!done && emitted.get() >= size) {
+                        done = true;
+                        s.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done = true;
+                }
+            });
+        }
+    }
+
+    /** Subscriber requesting a batch of items at a time */
+    private static class Collector<T> implements Subscriber<T> {
+        final int batch;
+        final List<T> items = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(1);
+        Subscription subscription;
+        Throwable error;
+
+        Collector(int batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            s.request(batch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            if (items.size() % batch == 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void orderedOutputs() throws InterruptedException {
+        Collector<String> out = new Collector<>(5);
+        Orders orders = new Orders(200, out);
+        new TrFlow(tr).parallelism(3).executor(executor).apply(orders)
+            .subscribe(out);
+        out.await();
+        assertNull(out.error);
+        assertEquals(200, out.items.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i + ":" + (i + 1), out.items.get(i));
+        }
+        assertTrue(orders.maxAhead <= 3);
+    }
+
+    @Test
+    public void demandDrivesInputs() throws InterruptedException {
+        Collector<String> out = new Collector<String>(4) {
+            @Override
+            public void onNext(String item) {
+                items.add(item);
+            }
+        };
+        Orders orders = new Orders(200, out);
+        new TrFlow(tr).parallelism(8).executor(executor).apply(orders)
+            .subscribe(out);
+        for (int i = 0; i < 100 && out.items.size() < 4; i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+        assertEquals(4, out.items.size());
+        assertEquals(4, orders.emitted.get());
+        out.subscription.cancel();
+    }
+
+    @Test
+    public void errorAfterPreviousOutputs() throws InterruptedException {
+        Collector<String> out = new Collector<>(3);
+        Orders orders = new Orders(20, out);
+        orders.broken = 13;
+        new TrFlow(tr).parallelism(4).executor(executor).apply(orders)
+            .subscribe(out);
+        out.await();
+        assertTrue(out.error instanceof IllegalArgumentException);
+        assertEquals(13, out.items.size());
+    }
+
+    @Test
+    public void bytes() throws InterruptedException {
+        Collector<ByteBuffer> out = new Collector<>(1);
+        new TrFlow(tr).executor(executor).bytes(new Orders(3, out))
+            .subscribe(out);
+        out.await();
+        assertEquals(3, out.items.size());
+        assertEquals("2:3", StandardCharsets.UTF_8.decode(out.items.get(2))
+            .toString());
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.lo.xml.Xsl;
+import org.lo.xml.XslLint;
+import org.lo.xml.XslLint.Cost;
+import org.lo.xml.XslLint.Finding;
+
+/**
+ * Test case for reporting expensive patterns in stylesheets.
+ *
+ * @author phuc
+ */
+public class LintTest {
+
+    @Test
+    public void clean() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsOutputXml(noindent(), omitXmlDecl()));
+                ae(L, xsTemplate("eu"));
+                ae(L, L, xsApply("member"));
+                ae(L, xsTemplate("state"));
+                ae(L, L, xsCopy());
+                ae(L, L, L, xsApply());
+            }
+        }.build();
+
+        assertEquals(0, XslLint.check(xsl).size());
+        XslLint.verify(xsl);
+    }
+
+    @Test
+    public void muenchian() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                String eachState = "uscity[generate-id(.)"
+                    + "=generate-id(key('State', @state))]/@state";
+
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsKey("State", "uscity", "@state"));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach(eachState));
+                ae(L, L, L, xsValue(), xsLine());
+            }
+        }.build();
+
+        List<Finding> findings = XslLint.check(xsl);
+        assertEquals(1, findings.size());
+        assertEquals("muenchian-grouping", findings.get(0).rule);
+        assertEquals(Cost.QUADRATIC, findings.get(0).cost);
+        assertEquals("xsl:template[/]/xsl:for-each",
+            findings.get(0).path());
+    }
+
+    @Test
+    public void quadratic() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("//item"));
+                ae(L, L, L, xsValue("//price[@item=current()/@id]"));
+                ae(L, L, L, xsNumber(levelAny()));
+                ae(L, L, L, xsValue("count(preceding-sibling::item)"));
+                ae(L, L, L, xsValue("'not // a path'"));
+            }
+        }.build();
+
+        List<Finding> findings = XslLint.check(xsl);
+        assertEquals(4, findings.size());
+        assertEquals("descendant-scan", findings.get(0).rule);
+        assertEquals(Cost.LINEAR, findings.get(0).cost);
+        assertEquals("descendant-scan", findings.get(1).rule);
+        assertEquals(Cost.QUADRATIC, findings.get(1).cost);
+        assertEquals("number-any", findings.get(2).rule);
+        assertEquals(Cost.QUADRATIC, findings.get(2).cost);
+        assertEquals("preceding-count", findings.get(3).rule);
+
+        try {
+            XslLint.verify(xsl);
+            fail("Expect quadratic patterns");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("//price"));
+        }
+    }
+
+    @Test
+    public void matchPredicates() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("//item"));
+                ae(L, L, xsValue("@id"));
+                ae(L, xsTemplate("item[count(preceding-sibling::item) > 2]"));
+                ae(L, L, xsValue("@id"));
+            }
+        }.build();
+
+        List<Finding> findings = XslLint.check(xsl);
+        assertEquals(1, findings.size());
+        assertEquals("preceding-count", findings.get(0).rule);
+        assertEquals("match", findings.get(0).attribute);
+        assertEquals(Cost.QUADRATIC, findings.get(0).cost);
+    }
+
+}
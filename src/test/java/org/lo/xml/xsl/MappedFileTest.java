@@ -0,0 +1,92 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.lo.xml.MappedInputStream;
+import org.lo.xml.Str;
+import org.lo.xml.Tr;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for transforming files read through memory-mapped windows.
+ *
+ * @author phuc
+ */
+public class MappedFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String cities = new Str() {
+        @Override
+        protected void doBuild() {
+            a("<cities>");
+            for (int i = 0; i < 1000; i++) {
+                a("<city pop='", i * 10, "'>City ", i, "</city>");
+            }
+            a("</cities>");
+        }
+    }.make();
+
+    private final Xsl total = new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1(xsOutputText()));
+            ae(L, xsTemplate("cities"));
+            ae(L, L, xsValue("count(city)"), xsText(" "));
+            ae(L, L, xsValue("sum(city/@pop)"));
+        }
+    }.build();
+
+    @Test
+    public void applyToFile() throws IOException {
+        Path input = folder.newFile("cities.xml").toPath();
+        Path output = folder.newFile("total.txt").toPath();
+        Files.write(input, cities.getBytes(StandardCharsets.UTF_8));
+        Files.write(output, "to be replaced by a shorter output"
+            .getBytes(StandardCharsets.UTF_8));
+
+        Tr tr = Tr.xsl(total);
+        assertEquals("1000 4995000", tr.apply(input));
+        tr.apply(input, output);
+        assertEquals("1000 4995000", new String(Files.readAllBytes(output),
+            StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readAcrossWindows() throws IOException {
+        Path input = folder.newFile("cities.xml").toPath();
+        byte[] bytes = cities.getBytes(StandardCharsets.UTF_8);
+        Files.write(input, bytes);
+
+        for (int window : new int[] { 1, 7, 4096, bytes.length }) {
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            try (InputStream in = new MappedInputStream(input, window)) {
+                assertEquals(bytes.length, in.available());
+                read.write(in.read());
+                assertEquals(5, in.skip(5));
+                byte[] buf = new byte[1000];
+                for (int n; (n = in.read(buf, 0, buf.length)) > 0;) {
+                    read.write(buf, 0, n);
+                }
+                assertEquals(-1, in.read());
+            }
+            byte[] expected = new byte[bytes.length - 5];
+            expected[0] = bytes[0];
+            System.arraycopy(bytes, 6, expected, 1, bytes.length - 6);
+            assertArrayEquals(expected, read.toByteArray());
+        }
+    }
+
+}
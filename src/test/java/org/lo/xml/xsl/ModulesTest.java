@@ -0,0 +1,132 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+
+import org.junit.Test;
+
+import org.lo.xml.Tr;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+import org.lo.xml.XslModules;
+
+/**
+ * Test case for serving xsl modules from memory and caching their compiled
+ * forms.
+ *
+ * @author phuc
+ */
+public class ModulesTest {
+
+    private final Xml state = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("State");
+            ae(L, e("Name", t("Texas")));
+            ae(L, e("Rank", t(2)));
+        }
+    }.build();
+
+    private static Xsl rank(String label) {
+        return new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("State"));
+                ae(L, L, xsText(label), xsValue("Rank"));
+            }
+        }.build();
+    }
+
+    private final Xsl byRank = new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1());
+            ae(L, xsImport("common/rank"));
+            ae(L, xsOutputText());
+            ae(L, xsParam("prefix", "'State: '"));
+            ae(L, xsTemplate("State"));
+            ae(L, L, xsValue("$prefix"), xsValue("Name"), xsText(", "));
+            ae(L, L, xsApplyImports());
+        }
+    }.build();
+
+    private final Xsl byName = new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1(xsOutputText()));
+            ae(L, xsTemplate("/"));
+            ae(L, L, xsValue("document('data/state')/State/Name"));
+        }
+    }.build();
+
+    @Test
+    public void invalidateDependents() {
+        XslModules modules = new XslModules()
+            .put("common/rank", rank("Rank: "))
+            .put("main/rank", byRank)
+            .put("main/name", byName)
+            .put("data/state", state);
+
+        assertEquals("State: Texas, Rank: 2",
+            modules.tr("main/rank").apply(state));
+        assertEquals("Texas", modules.tr("main/name").apply());
+        assertEquals("[common/rank]",
+            modules.dependencies("main/rank").toString());
+
+        modules.put("common/rank", rank("#"));
+        assertFalse(modules.isCompiled("main/rank"));
+        assertTrue(modules.isCompiled("main/name"));
+        assertEquals("State: Texas, #2",
+            modules.tr("main/rank").apply(state));
+    }
+
+    @Test
+    public void compiledTemplates() {
+        XslModules modules = new XslModules()
+            .put("common/rank", rank("Rank: "))
+            .put("main/rank", byRank);
+
+        Tr tr = Tr.of(c -> c.templates(modules.templates("main/rank"))
+            .param("prefix", "")
+            .resolver(modules));
+        assertEquals("Texas, Rank: 2", tr.apply(state));
+        assertSame(modules.templates("main/rank"),
+            modules.templates("main/rank"));
+    }
+
+    @Test
+    public void concurrentReads() throws InterruptedException,
+        ExecutionException, TransformerException {
+        XslModules modules = new XslModules()
+            .put("main/name", byName)
+            .put("data/state", state);
+        DOMSource module = (DOMSource) modules.resolve("data/state", null);
+        assertFalse(module.getNode().getClass().getName()
+            .contains("Deferred"));
+
+        Tr tr = modules.tr("main/name");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> names = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                names.add(executor.submit(() -> tr.apply()));
+            }
+            for (Future<String> name : names) {
+                assertEquals("Texas", name.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
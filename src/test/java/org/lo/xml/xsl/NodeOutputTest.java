@@ -0,0 +1,99 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.lo.xml.F;
+import org.lo.xml.Tr;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for transforming into nodes and SAX events instead of text.
+ *
+ * @author phuc
+ */
+public class NodeOutputTest {
+
+    private final Xml states = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("states");
+            ae(L, e("state", a("rank", 2), t("Texas")));
+            ae(L, e("state", a("rank", 1), t("Alaska")));
+        }
+    }.build();
+
+    /** Ranks of the states, as rank elements without a common root */
+    private final Tr ranks = Tr.xsl(new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1());
+            ae(L, xsTemplate("states"));
+            ae(L, L, xsApply("state"));
+            ae(L, xsTemplate("state"));
+            ae(L, L, e("rank", a("name", "{.}"), xsValue("@rank")));
+        }
+    }.build());
+
+    @Test
+    public void document() {
+        Document doc = Tr.xsl(new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsTemplate("/"));
+                ae(L, L, e("ranks", xsApply("states/state")));
+                ae(L, xsTemplate("state"));
+                ae(L, L, e("rank", xsValue("@rank")));
+            }
+        }.build()).applyToNode(states);
+        assertEquals(3.0, F.eval("sum(/ranks/rank)", doc,
+            XPathConstants.NUMBER));
+    }
+
+    @Test
+    public void fragmentOfOwner() {
+        Xml report = Xml.create();
+        DocumentFragment fragment = ranks.applyToNode(states.get(),
+            report.owner);
+        assertSame(report.owner, fragment.getOwnerDocument());
+        assertEquals(2, fragment.getChildNodes().getLength());
+        assertSame(fragment, report.importOne(fragment));
+
+        report.ae("report");
+        report.ae(Xml.L, fragment);
+        assertEquals("<report><rank name=\"Texas\">2</rank>"
+            + "<rank name=\"Alaska\">1</rank></report>", report.toXml());
+    }
+
+    @Test
+    public void saxEvents() {
+        StringBuilder names = new StringBuilder();
+        ranks.apply(states.get(), new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String local, String qname,
+                Attributes atts) {
+                names.append(qname).append('=').append(atts.getValue("name"))
+                    .append(' ');
+            }
+        });
+        assertEquals("rank=Texas rank=Alaska ", names.toString());
+    }
+
+    @Test
+    public void sameAsText() {
+        Node node = ranks.applyToNode(states.get(), F.newDocument());
+        assertEquals(ranks.apply(states).replaceFirst("<\\?xml[^>]*>", ""),
+            F.toString(node));
+    }
+
+}
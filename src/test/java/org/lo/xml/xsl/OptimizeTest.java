@@ -0,0 +1,214 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import org.lo.xml.F;
+import org.lo.xml.Tr;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+import org.lo.xml.XslOpt;
+
+/**
+ * Test case for rewriting stylesheets before compilation; the rewritten
+ * stylesheets must give the same output.
+ *
+ * @author phuc
+ */
+public class OptimizeTest {
+
+    private final Xml order = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("order");
+            ae(L, e("item", a("id", "a"), a("price", "10")));
+            ae(L, e("item", a("id", "b"), a("price", "30")));
+            ae(L, e("item", a("id", "c"), a("price", "60")));
+            ae(L, e("stock", a("item", "a"), a("count", "5")));
+            ae(L, e("stock", a("item", "c"), a("count", "0")));
+        }
+    }.build();
+
+    @Test
+    public void hoistVariable() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("order/item"));
+                ae(L, L, L, xsVariable("total", "sum(/order/item/@price)"));
+                ae(L, L, L, xsVariable("share", "@price div $total"));
+                ae(L, L, L, xsVariable("count", "count(../item)"));
+                ae(L, L, L, xsValue("concat(@id, ' ', $share, ' ', $count)"));
+                ae(L, L, L, xsLine());
+            }
+        }.build();
+
+        Document opt = XslOpt.optimize(xsl);
+        String text = F.toString(opt);
+        assertTrue(text.indexOf("name=\"total\"") < text.indexOf("for-each"));
+        assertTrue(text.indexOf("name=\"share\"") > text.indexOf("for-each"));
+        assertTrue(text.indexOf("name=\"count\"") > text.indexOf("for-each"));
+        assertEquals(Tr.xsl(xsl).apply(order), Tr.xsl(opt).apply(order));
+    }
+
+    @Test
+    public void hoistKeepsGlobalAfterLoop() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsVariable("x", "'global'"));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("order/item"));
+                ae(L, L, L, xsVariable("x", "'local'"));
+                ae(L, L, L, xsValue("$x"));
+                ae(L, L, xsValue("$x"));
+            }
+        }.build();
+
+        Document opt = XslOpt.optimize(xsl);
+        assertEquals("locallocallocalglobal", Tr.xsl(xsl).apply(order));
+        assertEquals("locallocallocalglobal", Tr.xsl(opt).apply(order));
+    }
+
+    @Test
+    public void langNotHoisted() {
+        String doc = "<order xml:lang='en'><item id='a'/>"
+            + "<item id='b' xml:lang='fr'/></order>";
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("order/item"));
+                ae(L, L, L, xsVariable("en", "lang('en')"));
+                ae(L, L, L, xsValue("concat(@id, '=', $en, ' ')"));
+            }
+        }.build();
+
+        Document opt = XslOpt.optimize(xsl);
+        String text = F.toString(opt);
+        assertTrue(text.indexOf("name=\"en\"") > text.indexOf("for-each"));
+        assertEquals("a=true b=false ", Tr.xsl(xsl).apply(doc));
+        assertEquals("a=true b=false ", Tr.xsl(opt).apply(doc));
+    }
+
+    @Test
+    public void documents() {
+        assertTrue(XslOpt.sameDocument("order/item[documents]"));
+        assertTrue(XslOpt.sameDocument("key('k', 'document(x)')"));
+        assertFalse(XslOpt.sameDocument("document('a.xml')/order/item"));
+        assertFalse(XslOpt.sameDocument("document ('a.xml')//item"));
+        assertFalse(XslOpt.sameDocument("$orders/item"));
+        assertFalse(XslOpt.sameDocument("ext:nodes(.)"));
+        assertTrue(XslOpt.documentFree("concat($a, 'x/y', 2 div 3)"));
+        assertFalse(XslOpt.documentFree("count(/order/item)"));
+        assertFalse(XslOpt.documentFree("key('k', 'a')"));
+    }
+
+    @Test
+    public void invariant() {
+        assertInvariant("sum(/order/item/@price) * 2");
+        assertInvariant("count(//item[@price > 10]) div 2");
+        assertInvariant("concat('@price', name(/*))");
+        assertInvariant("$outer + 1");
+        assertNotInvariant("@price * 2");
+        assertNotInvariant("count(item)");
+        assertNotInvariant("position() + 1");
+        assertNotInvariant("name()");
+        assertNotInvariant("lang('en')");
+        assertNotInvariant("//item[@id = current()/@id]");
+        assertNotInvariant("$inner + 1");
+        assertNotInvariant("1 + ancestor::order");
+    }
+
+    @Test
+    public void addKeys() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("order/item"));
+                ae(L, L, L, xsValue("@id"), xsText(": "));
+                ae(L, L, L,
+                    xsValue("sum(//stock[@item=current()/@id]/@count)"));
+                ae(L, L, L, xsIf("//stock[@item = 'a']"), xsText(" *"));
+                ae(L, L, L, xsText(" //stock[@item='x']"), xsLine());
+            }
+        }.build();
+
+        Document opt = XslOpt.optimize(xsl);
+        String text = F.toString(opt);
+        assertTrue(text.contains("<xsl:key match=\"stock\""
+            + " name=\"opt.stock.item\" use=\"@item\"/>"));
+        assertTrue(text.contains(
+            "sum(key('opt.stock.item', current()/@id)/@count)"));
+        assertTrue(text.contains("test=\"key('opt.stock.item', 'a')\""));
+        assertTrue(text.contains(" //stock[@item='x']"));
+        assertEquals(Tr.xsl(xsl).apply(order), Tr.xsl(opt).apply(order));
+    }
+
+    @Test
+    public void inlineTemplate() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("order/item"));
+                ae(L, L, L, xsCall("print"));
+                ae(L, xsTemplate(name("print")));
+                ae(L, L, xsValue("@id"), xsText("="), xsValue("@price"));
+                ae(L, L, xsLine());
+            }
+        }.build();
+
+        Document opt = XslOpt.optimize(xsl);
+        assertFalse(F.toString(opt).contains("call-template"));
+        assertEquals(Tr.xsl(xsl).apply(order), Tr.xsl(opt).apply(order));
+        assertTrue(F.toString(new XslOpt().inline(false).apply(xsl))
+            .contains("call-template"));
+    }
+
+    @Test
+    public void inlineKeepsGlobalReference() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsVariable("x", "'global'"));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsVariable("x", "'local'"));
+                ae(L, L, xsCall("print"));
+                ae(L, xsTemplate(name("print")));
+                ae(L, L, xsValue("$x"));
+            }
+        }.build();
+
+        Document opt = XslOpt.optimize(xsl);
+        assertEquals("global", Tr.xsl(xsl).apply(order));
+        assertEquals("global", Tr.xsl(opt).apply(order));
+        assertTrue(F.toString(opt).contains("call-template"));
+    }
+
+    private static void assertInvariant(String expr) {
+        assertTrue(expr, XslOpt.invariant(expr, singleton("inner")));
+    }
+
+    private static void assertNotInvariant(String expr) {
+        assertFalse(expr, XslOpt.invariant(expr, singleton("inner")));
+    }
+
+    private static Set<String> singleton(String name) {
+        return Collections.singleton(name);
+    }
+
+}
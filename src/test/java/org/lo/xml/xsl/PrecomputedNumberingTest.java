@@ -0,0 +1,129 @@
+package org.lo.xml.xsl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+
+import org.lo.xml.Numbering;
+import org.lo.xml.Tr;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for numbering the input before transforming it, in place of
+ * xsl:number.
+ *
+ * @author phuc
+ */
+public class PrecomputedNumberingTest {
+
+    private final Xml outline = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("outline");
+            ae(L, e("section", a("title", "US coin denominations")));
+            ae(L, L, e("item", t("cent")));
+            ae(L, L, e("item", t("nickel")));
+            ae(L, L, e("item", t("dime")));
+            ae(L, e("section", a("title", "Persons on US coins")));
+            ae(L, L, e("item", t("Abraham Lincoln (cent)")));
+            ae(L, L, e("section", a("title", "Older coins")));
+            ae(L, L, L, e("item", t("Indian Head (cent)")));
+            ae(L, L, L, e("item", t("Liberty Head (nickel)")));
+            ae(L, L, e("item", t("Franklin Roosevelt (dime)")));
+        }
+    }.build();
+
+    /** Stylesheet numbering sections and items by xsl:number */
+    private static Xsl byEngine(Attr... number) {
+        return new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("outline"));
+                ae(L, L, xsForEach("//section|//item"));
+                ae(L, L, L, xsNumber(number));
+                ae(L, L, L, xsValue("@title|text()"), xsLine());
+            }
+        }.build();
+    }
+
+    /** Stylesheet reading the numbers of a precomputed numbering */
+    private static Xsl byAttribute(Numbering numbering) {
+        return new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("outline"));
+                ae(L, L, xsForEach("//section|//item"));
+                ae(L, L, L, xsNumbered(numbering));
+                ae(L, L, L, xsValue("@title|text()"), xsLine());
+            }
+        }.build();
+    }
+
+    private void assertSameOutput(Attr... number) {
+        Element xsNumber = Xsl.create().xsNumber(number);
+        Numbering numbering = Numbering.of(xsNumber);
+        String expected = Tr.xsl(byEngine(number)).apply(outline);
+        String actual = Tr.xsl(byAttribute(numbering))
+            .apply(numbering.apply(outline));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void levelSingle() {
+        Xsl x = Xsl.create();
+        assertSameOutput(x.levelSingle(), x.count("section|item"),
+            x.format("i) "));
+    }
+
+    @Test
+    public void levelAny() {
+        Xsl x = Xsl.create();
+        assertSameOutput(x.levelAny(), x.count("item"), x.format("(01) "));
+        assertSameOutput(x.levelAny(), x.count("section|item"),
+            x.format("A. "));
+    }
+
+    @Test
+    public void levelAnyFrom() {
+        Xsl x = Xsl.create();
+        assertSameOutput(x.levelAny(), x.count("item"), x.from("section"),
+            x.format("1. "));
+    }
+
+    /** Nodes before the first counted node are numbered 0, as in xslt */
+    @Test
+    public void levelAnyBeforeFirst() {
+        Numbering numbering = Numbering.of("item").level("any")
+            .format("(1) ");
+        String output = Tr.xsl(byAttribute(numbering))
+            .apply(numbering.apply(outline));
+        assertTrue(output.startsWith("(0) US coin denominations\n(1) cent\n"));
+    }
+
+    @Test
+    public void levelMultiple() {
+        Xsl x = Xsl.create();
+        assertSameOutput(x.levelMultiple(), x.count("section|item"),
+            x.format("a. 1. "));
+        assertSameOutput(x.levelMultiple(), x.count("section|item"),
+            x.format("[I-1-a]"));
+        assertSameOutput(x.levelMultiple(), x.count("section"),
+            x.format("1 "));
+    }
+
+    @Test
+    public void formatSequence() {
+        Numbering n = new Numbering().format("(1.a-i)");
+        assertEquals("(3)", n.format(asList(3)));
+        assertEquals("(3.b-iv-v)", n.format(asList(3, 2, 4, 5)));
+        assertEquals("1.2", new Numbering().format(asList(1, 2)));
+    }
+
+}
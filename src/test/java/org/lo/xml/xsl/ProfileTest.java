@@ -0,0 +1,137 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.lo.xml.Tr;
+import org.lo.xml.TrCfg;
+import org.lo.xml.TrProfile;
+import org.lo.xml.TrProfile.Entry;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for profiling templates of a transformation.
+ *
+ * @author phuc
+ */
+public class ProfileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Xml states = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("states");
+            for (int i = 0; i < 10; i++) {
+                ae(L, e("state", a("code", "s" + i)));
+            }
+        }
+    }.build();
+
+    private final Xsl xsl = new Xsl() {
+        @Override
+        protected void doBuild() {
+            ae(xslStyleSheetV1(xsOutputText()));
+            ae(L, xsTemplate("/", xsApply("states/state")));
+            ae(L, xsTemplate("state"));
+            ae(L, L, xsMessage(t("state")));
+            ae(L, L, xsCall("print"));
+            ae(L, xsTemplate(name("print")));
+            ae(L, L, xsValue("@code"), xsLine());
+        }
+    }.build();
+
+    @Test
+    public void templates() throws IOException {
+        List<String> messages = new ArrayList<>();
+        TrProfile profile = TrProfile.of(c -> c.xsl(xsl)
+            .errorListener(new Messages(messages)));
+
+        String output = profile.apply(states);
+        assertEquals(Tr.xsl(xsl).apply(states), output);
+        assertEquals(10, messages.size());
+
+        Map<String, Entry> entries = profile.entries().stream()
+            .collect(Collectors.toMap(e -> e.template, Function.identity()));
+        assertEquals(1, entries.get("match=/").calls());
+        assertEquals(10, entries.get("match=state").calls());
+        assertEquals(10, entries.get("name=print").calls());
+        assertEquals(output.length(), entries.get("name=print").outputChars());
+        assertEquals(0, entries.get("match=state").outputChars());
+        Entry root = entries.get("match=/");
+        assertTrue(root.inclusiveNanos() >= root.exclusiveNanos());
+
+        Path file = profile.writeCollapsed(folder.newFile().toPath());
+        List<String> stacks = Files.readAllLines(file, StandardCharsets.UTF_8)
+            .stream().map(s -> s.substring(0, s.lastIndexOf(' ')))
+            .collect(Collectors.toList());
+        assertEquals("[match=/, match=/;match=state,"
+            + " match=/;match=state;name=print]", stacks.toString());
+
+        profile.reset();
+        assertEquals("", profile.collapsed());
+        assertEquals(0, profile.entries().get(0).calls());
+    }
+
+    @Test
+    public void configUnchanged() {
+        List<String> messages = new ArrayList<>();
+        TransformerFactory tf = TransformerFactory.newInstance();
+        tf.setErrorListener(new Messages(messages));
+        TrCfg cfg = new TrCfg().factory(tf).xsl(xsl);
+        Source source = cfg.xsl;
+
+        TrProfile profile = new TrProfile(cfg);
+        assertSame(source, cfg.xsl);
+        assertNull(cfg.listener);
+        assertEquals(Tr.xsl(xsl).apply(states), profile.apply(states));
+        assertEquals(10, messages.size());
+        assertEquals("state", messages.get(0));
+    }
+
+    /** Collect messages other than the markers of the profile */
+    private static class Messages implements ErrorListener {
+        final List<String> messages;
+
+        Messages(List<String> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void warning(TransformerException e) {
+            messages.add(e.getMessage());
+        }
+
+        @Override
+        public void error(TransformerException e) throws TransformerException {
+            throw e;
+        }
+
+        @Override
+        public void fatalError(TransformerException e)
+            throws TransformerException {
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.lo.xml.F;
+import org.lo.xml.Tr;
+import org.lo.xml.TrRegistry;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for reloading stylesheets when their files change.
+ *
+ * @author phuc
+ */
+public class RegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Xml state = Xml.create("State", "Texas");
+
+    private static String greet(String greeting) {
+        return F.toString(new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("State"));
+                ae(L, L, xsText(greeting), xsValue());
+            }
+        }.build().get());
+    }
+
+    @Test
+    public void keepPreviousOnFailure() throws IOException {
+        File file = folder.newFile("greet.xsl");
+        write(file, greet("Hello "));
+        try (TrRegistry registry = new TrRegistry()) {
+            registry.register("greet", file.toPath());
+            Tr tr = registry.tr("greet");
+            assertEquals("Hello Texas", tr.apply(state));
+
+            write(file, greet("Howdy "));
+            registry.reload("greet").join();
+            assertEquals("Howdy Texas", tr.apply(state));
+            assertTrue(registry.version("greet") > 1);
+
+            write(file, "<xsl:stylesheet");
+            try {
+                registry.reload("greet").join();
+                fail("Expect compile failure");
+            } catch (CompletionException e) {
+                assertNotNull(registry.error("greet"));
+            }
+            assertEquals("Howdy Texas", tr.apply(state));
+            assertTrue(registry.failures("greet") > 0);
+        }
+    }
+
+    @Test
+    public void reloadOnChange() throws Exception {
+        File file = folder.newFile("greet.xsl");
+        write(file, greet("Hello "));
+        try (TrRegistry registry = new TrRegistry(c -> c.param("x", 1))) {
+            registry.register("greet", file.toPath());
+            Tr tr = registry.tr("greet");
+            assertEquals("Hello Texas", tr.apply(state));
+
+            write(file, greet("Howdy "));
+            await(() -> tr.apply(state).equals("Howdy Texas"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failOnRegister() throws IOException {
+        File file = folder.newFile("broken.xsl");
+        write(file, "<xsl:stylesheet");
+        try (TrRegistry registry = new TrRegistry()) {
+            registry.register("broken", file.toPath());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import javax.xml.transform.Source;
+
+import org.junit.Test;
+
+import org.lo.xml.TrCfg;
+import org.lo.xml.TrSession;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for repeated transformations of one input, with key tables built
+ * once for lookups in Java.
+ *
+ * @author phuc
+ */
+public class SessionTest {
+
+    private final Xml un = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("un");
+            ae(L, e("state", a("cc", "af")));
+            ae(L, L, e("name", t("Afghanistan")));
+            ae(L, L, e("admitted", t("19 Nov. 1946")));
+            ae(L, e("state", a("cc", "au")));
+            ae(L, L, e("name", t("Australia")));
+            ae(L, L, e("admitted", t("1 Nov. 1945")));
+            ae(L, e("state", a("cc", "at")));
+            ae(L, L, e("name", t("Austria")));
+            ae(L, L, e("admitted", t("14 Dec. 1955")));
+        }
+    }.build();
+
+    /** Stylesheets calling key() work as is; the engine rebuilds its keys */
+    @Test
+    public void engineKeys() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsKey("UN", "state", "@cc"));
+                ae(L, xsParam("kp", t("af")));
+                ae(L, xsTemplate("un"));
+                ae(L, L, xsValue("key('UN',$kp)/name"));
+            }
+        }.build();
+
+        TrCfg cfg = new TrCfg().xsl(xsl);
+        Source source = cfg.xsl;
+        TrSession session = new TrSession(cfg, un.get());
+        assertSame(source, cfg.xsl);
+        assertEquals("Afghanistan", session.apply());
+        assertEquals("Australia", session.apply("kp", "au"));
+        assertEquals("Austria", session.apply("kp", "at"));
+    }
+
+    @Test
+    public void keyTables() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsKey("UN", "state", "@cc"));
+                ae(L, xsKey("Year", "state|admitted",
+                    "substring(., string-length(.) - 3)"));
+                ae(L, xsTemplate("/"));
+            }
+        }.build();
+
+        TrSession session = TrSession.of(c -> c.xsl(xsl), un);
+        assertEquals(1, session.key("UN", "af").size());
+        assertEquals("Australia", session.key("UN", "au").get(0)
+            .getFirstChild().getTextContent());
+        assertEquals(0, session.key("UN", "fr").size());
+        assertEquals(2, session.key("Year", "1945").size());
+        assertEquals("admitted", session.key("Year", "1945").get(1)
+            .getNodeName());
+        assertEquals("un", session.key("UN", "at").get(0).getParentNode()
+            .getNodeName());
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.TransformerException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.lo.xml.Str;
+import org.lo.xml.Tr;
+import org.lo.xml.TrSplit;
+import org.lo.xml.Xsl;
+
+/**
+ * Test case for transforming large inputs one record at a time.
+ *
+ * @author phuc
+ */
+public class SplitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String orders = new Str() {
+        @Override
+        protected void doBuild() {
+            a("<orders xmlns:p='urn:p'><meta>skipped</meta>");
+            for (int i = 0; i < 300; i++) {
+                a("<order id='", i, "'>");
+                for (int j = 0; j <= i % 4; j++) {
+                    a("<line p:qty='", j + 1, "'>item ", j, "</line>");
+                }
+                a("</order>");
+            }
+            a("</orders>");
+        }
+    }.make();
+
+    /** Total quantity of an order */
+    private static Xsl total(String root) {
+        return new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, a("xmlns:p", "urn:p"), a("exclude-result-prefixes", "p"));
+                ae(L, xsOutput(a("omit-xml-declaration", "yes")));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsApply(root));
+                ae(L, xsTemplate("order"));
+                ae(L, L, e("total", a("id", "{@id}"),
+                    xsValue("sum(line/@p:qty)")));
+            }
+        }.build();
+    }
+
+    @Test
+    public void sameAsWholeDocument() {
+        String expected = "<totals>"
+            + Tr.xsl(total("orders/order")).apply(orders) + "</totals>";
+        Tr tr = Tr.xsl(total("order"));
+
+        TrSplit split = new TrSplit(tr, "/orders/order").wrap("totals");
+        assertEquals(expected, split.apply(new StringReader(orders)));
+        assertEquals(expected, split.parallelism(4)
+            .apply(new StringReader(orders)));
+        assertEquals(expected, new TrSplit(tr, "order").wrap("totals")
+            .apply(new StringReader(orders)));
+        assertEquals("<totals></totals>", new TrSplit(tr, "/order")
+            .wrap("totals").apply(new StringReader(orders)));
+    }
+
+    @Test
+    public void failedRecord() {
+        Tr tr = Tr.of(c -> c.xsl(new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsParam("label"));
+                ae(L, xsTemplate("order"));
+                ae(L, L, xsIf("@id = 'bad'",
+                    xsMessage(a("terminate", "yes"), t("bad order"))));
+                ae(L, L, e("total", a("label", "{$label}"), xsValue("@id")));
+            }
+        }.build()).param("label", "T").errorListener(new ErrorListener() {
+            @Override
+            public void warning(TransformerException e) {}
+
+            @Override
+            public void error(TransformerException e) {}
+
+            @Override
+            public void fatalError(TransformerException e)
+                throws TransformerException {
+                throw e;
+            }
+        }));
+        TrSplit split = new TrSplit(tr, "order");
+        try {
+            split.apply(new StringReader(
+                "<orders><order id='bad'/></orders>"));
+            fail("Expect failed record");
+        } catch (IllegalArgumentException e) {
+            // the pooled transformer is replaced
+        }
+        assertEquals("<total label=\"T\">1</total>", split.apply(
+            new StringReader("<orders><order id='1'/></orders>")));
+    }
+
+    @Test
+    public void files() throws IOException {
+        Path input = folder.newFile("orders.xml").toPath();
+        Path output = folder.newFile("totals.xml").toPath();
+        Files.write(input, orders.getBytes(StandardCharsets.UTF_8));
+
+        TrSplit split = new TrSplit(Tr.xsl(total("order")), "orders/order")
+            .wrap("<totals>\n", "\n</totals>").parallelism(2);
+        assertEquals(300, split.apply(input, output));
+        String totals = new String(Files.readAllBytes(output),
+            StandardCharsets.UTF_8);
+        assertTrue(totals.startsWith("<totals>\n<total id=\"0\">1</total>"
+            + "<total id=\"1\">3</total>"));
+        assertTrue(totals.endsWith("<total id=\"299\">10</total>\n</totals>"));
+    }
+
+}
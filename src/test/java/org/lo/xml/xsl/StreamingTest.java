@@ -0,0 +1,134 @@
+package org.lo.xml.xsl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import org.lo.xml.F;
+import org.lo.xml.Str;
+import org.lo.xml.Tr;
+import org.lo.xml.Xml;
+import org.lo.xml.Xsl;
+import org.lo.xml.XslSax;
+
+/**
+ * Test case for running stylesheets of the streaming subset as SAX handlers.
+ *
+ * @author phuc
+ */
+public class StreamingTest {
+
+    private final Xml eu = new Xml() {
+        @Override
+        protected void doBuild() {
+            ae("eu");
+            ae(L, "member");
+            ae(L, L, e("state", t("Austria")));
+            ae(L, L, e("state", a("founding", "yes"), t("Belgium")));
+            ae(L, L, e("state", t("Denmark")));
+            ae(L, L, e("state", a("founding", "yes"), t("France")));
+            ae(L, "candidate");
+            ae(L, L, e("state", a("code", "al"), t("Albania")));
+            ae(L, L, e("state", a("code", "rs"), t("Serbia")));
+        }
+    }.build();
+
+    @Test
+    public void copy() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsOutputXml(noindent(), omitXmlDecl()));
+
+                ae(L, xsTemplate("eu"));
+                ae(L, L, xsApply("member"));
+
+                ae(L, xsTemplate("member"));
+                ae(L, L, "eu-members");
+                ae(L, L, L, xsApply("state[@founding]"));
+
+                ae(L, xsTemplate("state"));
+                ae(L, L, xsCopy());
+                ae(L, L, L, xsApply());
+            }
+        }.build();
+
+        Str expected = new Str() {
+            @Override
+            protected void doBuild() {
+                a("<eu-members>");
+                a(L, "<state>Belgium</state>");
+                a(L, "<state>France</state>");
+                a("</eu-members>");
+            }
+        }.build();
+
+        assertTrue(XslSax.compile(xsl).isPresent());
+        assertEquals(expected.get(), new Tr(XslSax.of(xsl)).apply(eu));
+    }
+
+    @Test
+    public void rename() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1());
+                ae(L, xsOutputXml(omitXmlDecl()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, e("states", a("kind", "all")));
+                ae(L, L, L, xsApply());
+                ae(L, xsTemplate("state"));
+                ae(L, L, "country");
+                ae(L, L, L, xsIf("@founding = 'yes'"));
+                ae(L, L, L, L, "founder", xsValue("@founding"));
+                ae(L, L, L, xsIf("not(@founding)", xsText("[")));
+                ae(L, L, L, xsValue("."));
+                ae(L, L, L, xsIf("@code", xsText("]"), xsValue("@code")));
+                ae(L, xsTemplate("state[@code != 'al']"));
+            }
+        }.build();
+
+        assertTrue(XslSax.compile(xsl).isPresent());
+        String expected = Tr.xsl(xsl).apply(eu);
+        assertEquals(expected, XslSax.tr(xsl).apply(eu));
+        String text = F.toString(eu.get());
+        assertEquals(expected, XslSax.tr(xsl).apply((CharSequence) text));
+    }
+
+    @Test
+    public void fallback() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("/"));
+                ae(L, L, xsForEach("//state"));
+                ae(L, L, L, xsValue(), xsLine());
+            }
+        }.build();
+
+        try {
+            XslSax.of(xsl);
+            fail("Expect for-each to be outside of the subset");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("xsl:for-each"));
+        }
+        assertEquals(Tr.xsl(xsl).apply(eu), XslSax.tr(xsl).apply(eu));
+    }
+
+    @Test
+    public void readOnce() {
+        Xsl xsl = new Xsl() {
+            @Override
+            protected void doBuild() {
+                ae(xslStyleSheetV1(xsOutputText()));
+                ae(L, xsTemplate("state"));
+                ae(L, L, xsValue("."), xsApply());
+            }
+        }.build();
+
+        assertFalse(XslSax.compile(xsl).isPresent());
+    }
+
+}